@@ -0,0 +1,61 @@
+package com.cloudera.ps.benchmarks;
+
+import com.cloudera.ps.cm.api.deployment.transform.DeploymentApiPathIncluder;
+import com.cloudera.ps.cm.api.deployment.transform.DeploymentReformatter;
+import com.cloudera.ps.cm.api.deployment.transform.DeploymentTransformer;
+import com.cloudera.ps.cm.api.deployment.transform.FusedDeploymentTransformer;
+import com.cloudera.ps.cm.api.deployment.transform.ObjectNodeFieldFilter;
+import com.cloudera.ps.cm.api.deployment.transform.ObjectNodeFieldSorter;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// the transformer chains CmApiDeploymentProcessor runs for the common flag combinations
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ChainBenchmark {
+
+    @Param({"", "r", "rs", "rsa"})
+    public String flags;
+
+    private JsonNode deployment;
+
+    @Setup(Level.Invocation)
+    public void copy(DeploymentState state) {
+        deployment = state.deployment.deepCopy();
+    }
+
+    @Benchmark
+    public JsonNode chain() {
+        List<DeploymentTransformer> transformerChain = new ArrayList<DeploymentTransformer>();
+        if (flags.contains("r")) {
+            transformerChain.add(new DeploymentReformatter());
+        }
+        if (flags.contains("s")) {
+            transformerChain.add(new ObjectNodeFieldSorter());
+        }
+        if (flags.contains("a")) {
+            transformerChain.add(new DeploymentApiPathIncluder("v10"));
+        }
+        transformerChain.add(new ObjectNodeFieldFilter());
+        return new FusedDeploymentTransformer(transformerChain).transform(deployment);
+    }
+}
@@ -0,0 +1,44 @@
+package com.cloudera.ps.benchmarks;
+
+import com.cloudera.ps.cm.api.deployment.format.DeploymentFormats;
+import com.cloudera.ps.cm.api.deployment.transform.DeploymentReformatter;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+
+@State(Scope.Benchmark)
+public class DeploymentState {
+
+    @Param({"1"})
+    public int clusters;
+
+    @Param({"1000"})
+    public int hosts;
+
+    @Param({"8"})
+    public int services;
+
+    @Param({"4"})
+    public int rolesPerHost;
+
+    @Param({"20"})
+    public int itemsPerRole;
+
+    public JsonNode deployment;
+    public JsonNode reformatted;
+    public byte[] json;
+    public byte[] smile;
+
+    @Setup
+    public void setup() throws IOException {
+        deployment = new SyntheticDeployment(clusters, hosts, services, rolesPerHost, itemsPerRole, 42).generate();
+        json = new ObjectMapper().writeValueAsBytes(deployment);
+        smile = new ObjectMapper(DeploymentFormats.smileFactory()).writeValueAsBytes(deployment);
+        reformatted = new DeploymentReformatter().transform(deployment.deepCopy());
+    }
+}
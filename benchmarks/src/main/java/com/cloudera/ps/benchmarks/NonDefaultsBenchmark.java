@@ -0,0 +1,70 @@
+package com.cloudera.ps.benchmarks;
+
+import com.cloudera.ps.cm.api.deployment.report.NonDefaultSettingsReport;
+import com.cloudera.ps.cm.configuration.ConfigurationReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+// --non_defaults on a warm JVM: a new report per run, as each run of the tool or request to --serve makes one,
+// over a reference that stays open
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class NonDefaultsBenchmark {
+
+    @Param({"60"})
+    public int versions;
+
+    @Param({"40"})
+    public int parametersPerRoleGroup;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private File database;
+    private ConfigurationReference reference;
+
+    @Setup
+    public void setup() throws IOException, SQLException {
+        database = File.createTempFile("reference", ".db");
+        if (!database.delete()) {
+            throw new IOException("Cannot replace " + database);
+        }
+        new SyntheticReference(versions, parametersPerRoleGroup).write(database);
+        reference = new ConfigurationReference(database.getPath());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        reference.close();
+        database.delete();
+    }
+
+    @Benchmark
+    public JsonNode report(DeploymentState state) {
+        return new NonDefaultSettingsReport(reference).transform(state.deployment);
+    }
+
+    @Benchmark
+    public JsonNode parseAndReport(DeploymentState state) throws IOException {
+        return new NonDefaultSettingsReport(reference).transform(mapper.readTree(state.json));
+    }
+}
@@ -0,0 +1,61 @@
+package com.cloudera.ps.benchmarks;
+
+import com.cloudera.ps.cm.api.deployment.format.DeploymentFormats;
+import com.cloudera.ps.cm.api.deployment.transform.StreamingDeploymentReformatter;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ParseBenchmark {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final JsonFactory factory = new JsonFactory();
+    private final DeploymentFormats formats = new DeploymentFormats();
+
+    @Benchmark
+    public JsonNode parseJson(DeploymentState state) throws IOException {
+        return mapper.readTree(state.json);
+    }
+
+    @Benchmark
+    public JsonNode parseSmile(DeploymentState state) throws IOException {
+        return formats.read(new ByteArrayInputStream(state.smile));
+    }
+
+    // token-level reformat of the same document, for comparison with parse plus tree reformat
+    @Benchmark
+    public void streamingReformat(DeploymentState state) throws IOException {
+        StreamingDeploymentReformatter reformatter = new StreamingDeploymentReformatter(factory);
+        JsonParser parser = factory.createParser(state.json);
+        Map<String, String> hostIdMap = reformatter.buildHostIdMap(parser);
+        parser.close();
+        parser = factory.createParser(state.json);
+        JsonGenerator generator = factory.createGenerator(new NullOutputStream());
+        reformatter.reformat(parser, generator, hostIdMap);
+        generator.close();
+        parser.close();
+    }
+}
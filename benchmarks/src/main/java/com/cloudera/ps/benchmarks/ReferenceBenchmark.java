@@ -0,0 +1,134 @@
+package com.cloudera.ps.benchmarks;
+
+import com.cloudera.ps.cm.configuration.ConfigurationReference;
+import com.cloudera.ps.cm.configuration.ConfigurationRow;
+import com.cloudera.ps.cm.configuration.ConfigurationSnapshot;
+import com.cloudera.ps.cm.configuration.ConfigurationSnapshotWriter;
+import org.apache.commons.dbutils.DbUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// point lookups of a property default in the memory-mapped snapshot, with a prepared SQLite query and through
+// ConfigurationReference, whose role group cache holds fewer groups than the lookups go to
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ReferenceBenchmark {
+
+    private static final int KEYS = 4096;
+
+    @Param({"60"})
+    public int versions;
+
+    @Param({"40"})
+    public int parametersPerRoleGroup;
+
+    private File directory;
+    private Connection conn;
+    private PreparedStatement lookup;
+    private ConfigurationSnapshot snapshot;
+    private ConfigurationReference reference;
+    private String[][] keys;
+    private int next;
+
+    @Setup
+    public void setup() throws IOException, SQLException {
+        directory = File.createTempFile("reference", "");
+        if (!directory.delete() || !directory.mkdir()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        File database = new File(directory, "configuration.db");
+        new SyntheticReference(versions, parametersPerRoleGroup).write(database);
+        conn = DriverManager.getConnection("jdbc:sqlite:" + database.getPath());
+        File snapshotFile = new File(directory, "configuration.snapshot");
+        new ConfigurationSnapshotWriter().write(conn, snapshotFile);
+        snapshot = new ConfigurationSnapshot(snapshotFile);
+        reference = new ConfigurationReference(database.getPath());
+        lookup = conn.prepareStatement("SELECT default_value FROM configuration " +
+                "WHERE version IS ? AND service IS ? AND role_group IS ? AND api_name IS ?");
+
+        List<String[]> all = new ArrayList<String[]>();
+        Statement stmt = conn.createStatement();
+        ResultSet rs = stmt.executeQuery("SELECT version, service, role_group, api_name FROM configuration");
+        while (rs.next()) {
+            all.add(new String[] {rs.getString(1), rs.getString(2), rs.getString(3), rs.getString(4)});
+        }
+        DbUtils.close(rs);
+        DbUtils.close(stmt);
+        Random random = new Random(42);
+        keys = new String[KEYS][];
+        for (int i = 0; i < KEYS; i++) {
+            keys[i] = all.get(random.nextInt(all.size()));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException, SQLException {
+        snapshot.close();
+        reference.close();
+        DbUtils.close(lookup);
+        DbUtils.close(conn);
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    private String[] nextKey() {
+        return keys[next++ & (KEYS - 1)];
+    }
+
+    @Benchmark
+    public String snapshot() {
+        String[] key = nextKey();
+        return snapshot.getDefaultValue(snapshot.find(key[0], key[1], key[2], key[3]));
+    }
+
+    @Benchmark
+    public String sqlite() throws SQLException {
+        String[] key = nextKey();
+        lookup.setString(1, key[0]);
+        lookup.setString(2, key[1]);
+        lookup.setString(3, key[2]);
+        lookup.setString(4, key[3]);
+        ResultSet rs = lookup.executeQuery();
+        try {
+            return rs.next() ? rs.getString(1) : null;
+        } finally {
+            DbUtils.close(rs);
+        }
+    }
+
+    @Benchmark
+    public String reference() throws SQLException {
+        String[] key = nextKey();
+        ConfigurationRow row = reference.lookup(key[0], key[1], key[2], key[3]);
+        return row == null ? null : row.getDefaultValue();
+    }
+}
@@ -0,0 +1,64 @@
+package com.cloudera.ps.benchmarks;
+
+import com.cloudera.ps.cm.api.deployment.format.DeploymentFormats;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.xml.XmlMapper;
+import com.fasterxml.jackson.dataformat.yaml.YAMLMapper;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// writes the reformatted deployment in each output format, the way -o selects them
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SerializationBenchmark {
+
+    @Param({"json", "yaml", "xml", "smile", "cbor"})
+    public String format;
+
+    @Param({"false", "true"})
+    public boolean pretty;
+
+    private ObjectMapper mapper;
+
+    @Setup
+    public void setup() {
+        if ("yaml".equals(format)) {
+            mapper = new YAMLMapper();
+        } else if ("xml".equals(format)) {
+            mapper = new XmlMapper();
+        } else if ("smile".equals(format)) {
+            mapper = new ObjectMapper(DeploymentFormats.smileFactory());
+        } else if ("cbor".equals(format)) {
+            mapper = new ObjectMapper(DeploymentFormats.cborFactory());
+        } else {
+            mapper = new ObjectMapper();
+        }
+        mapper.configure(SerializationFeature.INDENT_OUTPUT, pretty);
+    }
+
+    @Benchmark
+    public long write(DeploymentState state) throws IOException {
+        CountingOutputStream out = new CountingOutputStream(new NullOutputStream());
+        mapper.writeValue(out, state.reformatted);
+        return out.getByteCount();
+    }
+}
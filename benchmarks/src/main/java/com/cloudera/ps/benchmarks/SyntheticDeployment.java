@@ -0,0 +1,195 @@
+package com.cloudera.ps.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+public class SyntheticDeployment {
+
+    // service types with their role types, the first one runs on every host the service is placed on
+    static final String[][] SERVICE_TYPES = {
+            {"HDFS", "DATANODE", "NAMENODE", "SECONDARYNAMENODE", "BALANCER"},
+            {"YARN", "NODEMANAGER", "RESOURCEMANAGER", "JOBHISTORY"},
+            {"IMPALA", "IMPALAD", "STATESTORE", "CATALOGSERVER"},
+            {"HBASE", "REGIONSERVER", "MASTER"},
+            {"HIVE", "GATEWAY", "HIVESERVER2", "HIVEMETASTORE"},
+            {"SPARK_ON_YARN", "GATEWAY", "SPARK_YARN_HISTORY_SERVER"},
+            {"KAFKA", "KAFKA_BROKER"},
+            {"ZOOKEEPER", "SERVER"},
+            {"SOLR", "SOLR_SERVER"},
+            {"OOZIE", "OOZIE_SERVER"},
+            {"HUE", "HUE_SERVER"},
+            {"SENTRY", "SENTRY_SERVER"},
+    };
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final int clusters;
+    private final int hosts;
+    private final int services;
+    private final int rolesPerHost;
+    private final int itemsPerRole;
+    private final Random random;
+
+    public SyntheticDeployment(int clusters, int hosts, int services, int rolesPerHost, int itemsPerRole, long seed) {
+        this.clusters = clusters;
+        this.hosts = hosts;
+        this.services = services;
+        this.rolesPerHost = rolesPerHost;
+        this.itemsPerRole = itemsPerRole;
+        this.random = new Random(seed);
+    }
+
+    public ObjectNode generate() {
+        ObjectNode deployment = mapper.createObjectNode();
+        deployment.put("timestamp", "2019-06-01T00:00:00.000Z");
+        ArrayNode clusterArray = deployment.putArray("clusters");
+        ArrayNode hostArray = mapper.createArrayNode();
+        for (int c = 0; c < clusters; c++) {
+            clusterArray.add(cluster(c, hostArray));
+        }
+        deployment.set("hosts", hostArray);
+        ArrayNode users = deployment.putArray("users");
+        users.addObject().put("name", "admin").putArray("roles").add("ROLE_ADMIN");
+        users.addObject().put("name", "operator").putArray("roles").add("ROLE_OPERATOR");
+        ObjectNode versionInfo = deployment.putObject("versionInfo");
+        versionInfo.put("version", "5.16.1");
+        versionInfo.put("buildUser", "jenkins");
+        versionInfo.put("buildTimestamp", "20181129-1148");
+        versionInfo.put("gitHash", "7e1fb7e0bfef6cb28ba2c2ecb1e1a7b2ba5ec18b");
+        versionInfo.put("snapshot", false);
+        ObjectNode managementService = deployment.putObject("managementService");
+        managementService.put("name", "mgmt");
+        managementService.put("type", "MGMT");
+        managementService.set("config", config("mgmt", itemsPerRole));
+        ArrayNode managementRoles = managementService.putArray("roles");
+        for (String roleType : new String[] {"SERVICEMONITOR", "HOSTMONITOR", "EVENTSERVER", "ALERTPUBLISHER"}) {
+            managementRoles.add(role("mgmt", roleType, hostArray.get(0).path("hostId").asText(), "mgmt-" + roleType + "-BASE"));
+        }
+        managementService.putArray("roleConfigGroups");
+        deployment.set("managerSettings", config("cm", itemsPerRole));
+        deployment.set("allHostsConfig", config("host", itemsPerRole));
+        deployment.putArray("peers");
+        return deployment;
+    }
+
+    private ObjectNode cluster(int index, ArrayNode hostArray) {
+        String clusterName = "cluster" + (index + 1);
+        ObjectNode cluster = mapper.createObjectNode();
+        cluster.put("name", clusterName);
+        cluster.put("displayName", "Cluster " + (index + 1));
+        cluster.put("version", "CDH5");
+        cluster.put("fullVersion", "5.16.1");
+        cluster.put("maintenanceMode", false);
+        List<ObjectNode> serviceNodes = new ArrayList<ObjectNode>();
+        ArrayNode serviceArray = cluster.putArray("services");
+        for (int s = 0; s < services; s++) {
+            String[] serviceType = SERVICE_TYPES[s % SERVICE_TYPES.length];
+            String serviceName = serviceType[0].toLowerCase() + (s < SERVICE_TYPES.length ? "" : "-" + (s / SERVICE_TYPES.length));
+            ObjectNode service = serviceArray.addObject();
+            service.put("name", serviceName);
+            service.put("type", serviceType[0]);
+            service.put("displayName", serviceType[0]);
+            service.set("config", config(serviceName, itemsPerRole));
+            service.putArray("roles");
+            ArrayNode roleConfigGroups = service.putArray("roleConfigGroups");
+            for (int r = 1; r < serviceType.length; r++) {
+                ObjectNode group = roleConfigGroups.addObject();
+                group.put("name", serviceName + "-" + serviceType[r] + "-BASE");
+                group.put("roleType", serviceType[r]);
+                group.put("base", true);
+                group.putObject("serviceRef").put("clusterName", clusterName).put("serviceName", serviceName);
+                group.set("config", config(serviceType[r].toLowerCase(), itemsPerRole));
+            }
+            serviceNodes.add(service);
+        }
+        int clusterHosts = hosts / clusters + (index < hosts % clusters ? 1 : 0);
+        for (int h = 0; h < clusterHosts; h++) {
+            String hostId = new UUID(random.nextLong(), random.nextLong()).toString();
+            ObjectNode host = hostArray.addObject();
+            host.put("hostId", hostId);
+            host.put("ipAddress", "10." + index + "." + (h / 250) + "." + (h % 250 + 1));
+            host.put("hostname", String.format("host-%05d.%s.example.com", h, clusterName));
+            host.put("rackId", "/rack" + (h / 40));
+            host.putObject("clusterRef").put("clusterName", clusterName);
+            host.put("maintenanceMode", false);
+            ArrayNode roleRefs = host.putArray("roleRefs");
+            for (int r = 0; r < rolesPerHost; r++) {
+                ObjectNode service = serviceNodes.get((h + r) % serviceNodes.size());
+                String[] serviceType = SERVICE_TYPES[((h + r) % serviceNodes.size()) % SERVICE_TYPES.length];
+                // masters go on the first hosts, everything else runs the worker role
+                String roleType = h < serviceType.length - 2 ? serviceType[h + 2] : serviceType[1];
+                String serviceName = service.path("name").asText();
+                String roleName = serviceName + "-" + roleType + "-" + Long.toHexString(random.nextLong());
+                ((ArrayNode) service.get("roles")).add(role(serviceName, roleType, hostId, serviceName + "-" + roleType + "-BASE")
+                        .put("name", roleName));
+                roleRefs.addObject().put("clusterName", clusterName).put("serviceName", serviceName).put("roleName", roleName);
+            }
+            host.set("config", config("host", 3));
+        }
+        ArrayNode parcels = cluster.putArray("parcels");
+        ObjectNode parcel = parcels.addObject();
+        parcel.put("product", "CDH");
+        parcel.put("version", "5.16.1-1.cdh5.16.1.p0.3");
+        parcel.put("stage", "ACTIVATED");
+        parcel.putObject("clusterRef").put("clusterName", clusterName);
+        return cluster;
+    }
+
+    private ObjectNode role(String serviceName, String roleType, String hostId, String roleConfigGroupName) {
+        ObjectNode role = mapper.createObjectNode();
+        role.put("name", serviceName + "-" + roleType);
+        role.put("type", roleType);
+        role.putObject("hostRef").put("hostId", hostId);
+        role.put("maintenanceMode", false);
+        role.set("config", config(roleType.toLowerCase(), itemsPerRole));
+        role.putObject("roleConfigGroupRef").put("roleConfigGroupName", roleConfigGroupName);
+        return role;
+    }
+
+    // overridden configs mostly repeat across roles of a type, with the odd host specific value and safety valve
+    private ObjectNode config(String prefix, int items) {
+        ObjectNode config = mapper.createObjectNode();
+        ArrayNode itemArray = config.putArray("items");
+        for (int i = 0; i < items; i++) {
+            ObjectNode item = itemArray.addObject();
+            item.put("name", prefix + "_config_" + i);
+            switch (i % 5) {
+                case 0:
+                    item.put("value", String.valueOf(1L << (10 + i % 20)));
+                    break;
+                case 1:
+                    item.put("value", i % 2 == 0 ? "true" : "false");
+                    break;
+                case 2:
+                    item.put("value", "/data/" + (random.nextInt(12) + 1) + "/" + prefix);
+                    break;
+                case 3:
+                    item.put("value", "{\"warning\":\"never\",\"critical\":\"" + random.nextInt(100) + "\"}");
+                    break;
+                default:
+                    item.put("value", "<property><name>" + prefix + ".safety.valve." + i + "</name><value>" +
+                            random.nextInt(1000) + "</value></property>");
+            }
+        }
+        if (items > 0) {
+            itemArray.addObject().put("name", "role_jceks_password").put("value", Long.toHexString(random.nextLong()));
+        }
+        return config;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 5) {
+            System.err.println("usage: SyntheticDeployment <clusters> <hosts> <services> <roles per host> <items per role>");
+            System.exit(1);
+        }
+        ObjectNode deployment = new SyntheticDeployment(Integer.parseInt(args[0]), Integer.parseInt(args[1]),
+                Integer.parseInt(args[2]), Integer.parseInt(args[3]), Integer.parseInt(args[4]), 42).generate();
+        new ObjectMapper().writeValue(System.out, deployment);
+    }
+}
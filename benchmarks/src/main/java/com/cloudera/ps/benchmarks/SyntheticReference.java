@@ -0,0 +1,96 @@
+package com.cloudera.ps.benchmarks;
+
+import org.apache.commons.dbutils.DbUtils;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+// a configuration reference in the flat layout of ConfigurationDatabaseLoader, with the service and role types
+// of SyntheticDeployment and parameters named like its config items. Version 5.16.1, the one of the synthetic
+// clusters, comes first, the others only make the reference as large as one with many CDH releases
+public class SyntheticReference {
+
+    private final int versions;
+    private final int parametersPerRoleGroup;
+
+    public SyntheticReference(int versions, int parametersPerRoleGroup) {
+        this.versions = versions;
+        this.parametersPerRoleGroup = parametersPerRoleGroup;
+    }
+
+    public void write(File database) throws SQLException {
+        try {
+            Class.forName("org.sqlite.JDBC");
+        } catch (ClassNotFoundException e) {
+            throw new SQLException(e);
+        }
+        Connection conn = DriverManager.getConnection("jdbc:sqlite:" + database.getPath());
+        try {
+            Statement stmt = conn.createStatement();
+            stmt.execute("CREATE TABLE configuration (product TEXT, version TEXT, service TEXT, role_group TEXT, " +
+                    "category TEXT, api_name TEXT, display_name TEXT, related_name TEXT, description TEXT, " +
+                    "default_value TEXT, units TEXT, required INTEGER, sensitive INTEGER)");
+            conn.setAutoCommit(false);
+            PreparedStatement insert = conn.prepareStatement("INSERT INTO configuration VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?)");
+            for (int v = 0; v < versions; v++) {
+                String version = v == 0 ? "5.16.1" : "5." + (v - 1) + ".0";
+                for (String[] serviceType : SyntheticDeployment.SERVICE_TYPES) {
+                    // service-wide parameters are listed under a role group named after the service type
+                    for (int r = 0; r < serviceType.length; r++) {
+                        addRoleGroup(insert, version, serviceType[0], serviceType[r]);
+                    }
+                }
+            }
+            insert.executeBatch();
+            DbUtils.close(insert);
+            conn.commit();
+            conn.setAutoCommit(true);
+            // the search table and indexes the loader adds
+            stmt.execute("CREATE VIRTUAL TABLE configuration_search USING fts4(description)");
+            stmt.execute("INSERT INTO configuration_search (description) SELECT DISTINCT description FROM configuration");
+            stmt.execute("CREATE INDEX configuration_lookup ON configuration (version, service, role_group, api_name)");
+            stmt.execute("CREATE INDEX configuration_description_lookup ON configuration (description)");
+            DbUtils.close(stmt);
+        } finally {
+            DbUtils.close(conn);
+        }
+    }
+
+    private void addRoleGroup(PreparedStatement insert, String version, String service, String roleGroup)
+            throws SQLException {
+        String prefix = roleGroup.toLowerCase();
+        for (int i = 0; i <= parametersPerRoleGroup; i++) {
+            String apiName = i < parametersPerRoleGroup ? prefix + "_config_" + i : "role_jceks_password";
+            insert.setString(1, "CDH");
+            insert.setString(2, version);
+            insert.setString(3, service);
+            insert.setString(4, roleGroup);
+            insert.setString(5, "Main");
+            insert.setString(6, apiName);
+            insert.setString(7, "Display name of " + apiName);
+            insert.setString(8, apiName.replace('_', '.'));
+            insert.setString(9, "Description of " + apiName + " in " + service + " " + roleGroup);
+            insert.setString(10, defaultValue(i));
+            insert.setString(11, i % 5 == 0 ? "bytes" : "null");
+            insert.setInt(12, i % 7 == 0 ? 1 : 0);
+            insert.setInt(13, i < parametersPerRoleGroup ? 0 : 1);
+            insert.addBatch();
+        }
+    }
+
+    // sizes and flags default to what SyntheticDeployment sets them to, so those are not reported as overrides
+    private static String defaultValue(int i) {
+        switch (i % 5) {
+            case 0:
+                return String.valueOf(1L << (10 + i % 20));
+            case 1:
+                return i % 2 == 0 ? "true" : "false";
+            default:
+                return "null";
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.cloudera.ps.benchmarks;
+
+import com.cloudera.ps.cm.api.deployment.transform.DeploymentApiPathIncluder;
+import com.cloudera.ps.cm.api.deployment.transform.DeploymentReformatter;
+import com.cloudera.ps.cm.api.deployment.transform.ObjectNodeFieldFilter;
+import com.cloudera.ps.cm.api.deployment.transform.ObjectNodeFieldSorter;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransformerBenchmark {
+
+    // transformers may reuse their input, so every invocation gets fresh copies
+    @State(Scope.Thread)
+    public static class Input {
+
+        public JsonNode deployment;
+        public JsonNode reformatted;
+
+        @Setup(Level.Invocation)
+        public void copy(DeploymentState state) {
+            deployment = state.deployment.deepCopy();
+            reformatted = state.reformatted.deepCopy();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Pool {
+
+        @Param({"4"})
+        public int threads;
+
+        public ForkJoinPool pool;
+
+        @Setup
+        public void start() {
+            pool = new ForkJoinPool(threads);
+        }
+
+        @TearDown
+        public void stop() {
+            pool.shutdown();
+        }
+    }
+
+    @Benchmark
+    public JsonNode reformat(Input input) {
+        return new DeploymentReformatter().transform(input.deployment);
+    }
+
+    @Benchmark
+    public JsonNode parallelReformat(Input input, Pool pool) {
+        return new DeploymentReformatter(pool.pool).transform(input.deployment);
+    }
+
+    @Benchmark
+    public JsonNode sort(Input input) {
+        return new ObjectNodeFieldSorter().transform(input.reformatted);
+    }
+
+    @Benchmark
+    public JsonNode addApiPaths(Input input) {
+        return new DeploymentApiPathIncluder("v10").transform(input.reformatted);
+    }
+
+    @Benchmark
+    public JsonNode filter(Input input) {
+        return new ObjectNodeFieldFilter().transform(input.deployment);
+    }
+}
@@ -1,35 +1,459 @@
 package com.cloudera.ps;
 
+import com.cloudera.ps.cm.api.client.CmApiClient;
+import com.cloudera.ps.cm.api.client.DeploymentCache;
+import com.cloudera.ps.cm.api.client.SectionedDeploymentFetcher;
+import com.cloudera.ps.cm.api.deployment.batch.BatchDeploymentProcessor;
+import com.cloudera.ps.cm.api.deployment.format.DeploymentFormats;
+import com.cloudera.ps.cm.api.deployment.report.DeploymentChangeTracker;
+import com.cloudera.ps.cm.api.deployment.report.DeploymentDiff;
+import com.cloudera.ps.cm.api.deployment.report.DeploymentPoller;
+import com.cloudera.ps.cm.api.deployment.report.NonDefaultSettingsReport;
+import com.cloudera.ps.cm.api.deployment.stats.RunStats;
 import com.cloudera.ps.cm.api.deployment.transform.*;
+import com.cloudera.ps.cm.api.server.DeploymentServer;
+import com.cloudera.ps.cm.configuration.ConfigurationReference;
+import com.cloudera.ps.cm.configuration.DeploymentConfigurationExporter;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 
+import com.fasterxml.jackson.databind.util.TokenBuffer;
 import com.fasterxml.jackson.dataformat.xml.XmlMapper;
 import com.fasterxml.jackson.dataformat.yaml.YAMLMapper;
+import com.sun.net.httpserver.Headers;
 import org.apache.commons.cli.*;
-import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.output.CloseShieldOutputStream;
 
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.URL;
+import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.GZIPOutputStream;
 
 public class CmApiDeploymentProcessor {
 
+    private static final int OUTPUT_BUFFER_SIZE = 1 << 16;
+    private static final String[] CHAIN_OPTIONS = {"r", "s", "a", "v", "select", "parallel"};
+    private static final String[] FILTER_OPTIONS = {"redact", "redact_sensitive", "reference"};
+    // what a request to 'serve' may ask for: transforms of the deployment in its body and the output format,
+    // never a file, url or directory the server would read or write
+    private static final String[] REQUEST_OPTIONS = {"r", "s", "a", "v", "select", "parallel", "redact",
+            "redact_sensitive", "non_defaults", "o", "p", "gzip"};
+
+    private static final int MAX_CACHED_TRANSFORMERS = 32;
+
+    private final Resources resources;
+    // a request body read instead of 'file' or 'url', null on the command line
+    private final InputStream input;
+    private final OutputStream stdout;
+    // holds no state between trees, so one filter is shared by every chain and batch thread
+    private ObjectNodeFieldFilter fieldFilter;
+
     public CmApiDeploymentProcessor() {
-        //
+        this(new Resources(), null, System.out);
+    }
+
+    CmApiDeploymentProcessor(Resources resources, InputStream input, OutputStream stdout) {
+        this.resources = resources;
+        this.input = input;
+        this.stdout = stdout;
     }
 
     public void run(CommandLine cmd) throws IOException {
+        if (cmd.hasOption("serve")) {
+            serve(cmd);
+            return;
+        }
+        ObjectMapper outputMapper = buildOutputMapper(cmd);
+        if (cmd.hasOption("select") && !cmd.hasOption("r"))
+            throw new RuntimeException("Cannot specify option 'select' without option 'reformat'");
+        fieldFilter = buildFieldFilter(cmd);
+        if (cmd.hasOption("stream")) {
+            streamReformat(cmd, outputMapper);
+            return;
+        }
+        if (cmd.hasOption("non_defaults")) {
+            reportNonDefaults(cmd, outputMapper);
+            return;
+        }
+        if (cmd.hasOption("diff")) {
+            diff(cmd, outputMapper);
+            return;
+        }
+        if (cmd.hasOption("watch")) {
+            watch(cmd);
+            return;
+        }
+        if (cmd.hasOption("export")) {
+            export(cmd);
+            return;
+        }
+        if (cmd.hasOption("batch")) {
+            runBatch(cmd, outputMapper);
+            return;
+        }
+        RunStats stats = new RunStats(cmd.hasOption("stats"));
+        RunStats.Stage stage = stats.start("read", null);
+        // a selection from a file is reformatted while parsing, so the rest of the file is never materialized
+        boolean streamSelected = cmd.hasOption("select") && cmd.hasOption("f");
+        JsonNode original = streamSelected ? readSelectedDeploymentJson(cmd) : readDeploymentJson(cmd);
+        stage.stop(original);
+        JsonNode output = runAllTransformers(cmd, original, stats, !streamSelected);
+        stage = stats.start("write", output);
+        writeOutput(cmd, outputMapper, output);
+        stage.stop(null);
+        stats.report(System.err);
+    }
+
+    // every request gets its own processor, what can be reused across requests is kept in the shared resources
+    private void serve(CommandLine cmd) throws IOException {
+        final Options options = buildOptions();
+        final Resources shared = new Resources();
+        // requests cannot name files, they all use the reference the server was started with
+        final String reference = cmd.getOptionValue("reference");
+        InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                Integer.parseInt(cmd.getOptionValue("serve")));
+        final DeploymentServer server = new DeploymentServer(address, getThreads(cmd), new DeploymentServer.Handler() {
+            public void handle(List<String[]> parameters, InputStream body, Headers responseHeaders, OutputStream out)
+                    throws IOException {
+                for (String[] parameter : parameters) {
+                    Option option = options.getOption(parameter[0]);
+                    if (option != null && !Arrays.asList(REQUEST_OPTIONS).contains(
+                            option.getOpt() != null ? option.getOpt() : option.getLongOpt()))
+                        throw new RuntimeException("Cannot specify option '" + parameter[0] + "' in a request, only " +
+                                Arrays.toString(REQUEST_OPTIONS));
+                }
+                if (body == null)
+                    throw new RuntimeException("Must send the deployment as the request body");
+                List<String> args = new ArrayList<String>(Arrays.asList(toArgs(options, parameters)));
+                if (reference != null) {
+                    args.add("--reference");
+                    args.add(reference);
+                }
+                CommandLine request;
+                try {
+                    request = new DefaultParser().parse(options, args.toArray(new String[args.size()]));
+                } catch (ParseException e) {
+                    throw new RuntimeException(e.getMessage());
+                }
+                responseHeaders.set("Content-Type", getContentType(request));
+                if (request.hasOption("gzip")) {
+                    responseHeaders.set("Content-Encoding", "gzip");
+                }
+                new CmApiDeploymentProcessor(shared, body, out).run(request);
+            }
+        });
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            public void run() {
+                try {
+                    server.stop();
+                    shared.close();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+        server.start();
+        System.err.println("Serving on http://" + address.getAddress().getHostAddress() + ":" + server.getPort() + "/");
+    }
+
+    // query parameters are options without their dashes, e.g. ?r&select=/api/v10/cm/config
+    private static String[] toArgs(Options options, List<String[]> parameters) {
+        List<String> args = new ArrayList<String>();
+        for (String[] parameter: parameters) {
+            args.add((options.hasShortOption(parameter[0]) ? "-" : "--") + parameter[0]);
+            if (parameter[1] != null) {
+                args.add(parameter[1]);
+            }
+        }
+        return args.toArray(new String[args.size()]);
+    }
+
+    private static String getContentType(CommandLine cmd) {
+        String outputType = cmd.getOptionValue("o", "json");
+        if ("xml".equalsIgnoreCase(outputType))
+            return "application/xml";
+        if ("yaml".equalsIgnoreCase(outputType))
+            return "application/x-yaml";
+        if ("smile".equalsIgnoreCase(outputType))
+            return "application/x-jackson-smile";
+        if ("cbor".equalsIgnoreCase(outputType))
+            return "application/cbor";
+        return "application/json";
+    }
+
+    private void streamReformat(CommandLine cmd, ObjectMapper outputMapper) throws IOException {
+        if (!cmd.hasOption("r") || !cmd.hasOption("f"))
+            throw new RuntimeException("Option 'stream' requires options 'reformat' and 'file'");
+        if (cmd.hasOption("s") || cmd.hasOption("a"))
+            throw new RuntimeException("Cannot specify option 'stream' with options 'sort' or 'add'");
+        if ("xml".equalsIgnoreCase(cmd.getOptionValue("o")))
+            throw new RuntimeException("Option 'stream' does not support xml output");
+        OutputStream out = openOutput(cmd);
+        try {
+            JsonGenerator generator = outputMapper.getFactory().createGenerator(new CloseShieldOutputStream(out));
+            if (cmd.hasOption("p")) {
+                generator.useDefaultPrettyPrinter();
+            }
+            new StreamingDeploymentReformatter(null, buildSelector(cmd), fieldFilter).reformat(new File(cmd.getOptionValue("f")), generator);
+            generator.close();
+            writeLineSeparator(outputMapper, out);
+        } finally {
+            out.close();
+        }
+    }
+
+    private void reportNonDefaults(CommandLine cmd, ObjectMapper outputMapper) throws IOException {
+        if (cmd.hasOption("r") || cmd.hasOption("s") || cmd.hasOption("a"))
+            throw new RuntimeException("Cannot specify option 'non_defaults' with options 'reformat', 'sort' or 'add'");
         JsonNode original = readDeploymentJson(cmd);
+        writeOutput(cmd, outputMapper, new NonDefaultSettingsReport(getReference(cmd), fieldFilter).transform(original));
+    }
+
+    // references stay open with the resources, lookups are synchronized so requests can share them
+    private ConfigurationReference getReference(CommandLine cmd) throws IOException {
+        String path = cmd.getOptionValue("reference", "configuration.db");
+        synchronized (resources) {
+            ConfigurationReference reference = resources.references.get(path);
+            if (reference == null) {
+                try {
+                    reference = new ConfigurationReference(path);
+                } catch (SQLException e) {
+                    throw new IOException(e);
+                }
+                resources.references.put(path, reference);
+            }
+            return reference;
+        }
+    }
+
+    private ObjectNodeFieldFilter buildFieldFilter(CommandLine cmd) throws IOException {
+        String key = optionKey(cmd, FILTER_OPTIONS);
+        synchronized (resources) {
+            ObjectNodeFieldFilter filter = resources.fieldFilters.get(key);
+            if (filter == null) {
+                List<String> filteredFields = new ArrayList<String>(ObjectNodeFieldFilter.FILTERED_FIELDS);
+                if (cmd.hasOption("redact")) {
+                    filteredFields.addAll(Arrays.asList(cmd.getOptionValues("redact")));
+                }
+                if (cmd.hasOption("redact_sensitive")) {
+                    try {
+                        filteredFields.addAll(getReference(cmd).listSensitiveNames());
+                    } catch (SQLException e) {
+                        throw new IOException(e);
+                    }
+                }
+                filter = new ObjectNodeFieldFilter(filteredFields);
+                resources.fieldFilters.put(key, filter);
+            }
+            return filter;
+        }
+    }
+
+    private void diff(CommandLine cmd, ObjectMapper outputMapper) throws IOException {
+        if (cmd.hasOption("s") || cmd.hasOption("a"))
+            throw new RuntimeException("Cannot specify option 'diff' with options 'sort' or 'add'");
+        DeploymentTransformer transformer = buildDiffTransformer(cmd);
+        JsonNode before = transformer.transform(readDeploymentJson(cmd));
+        JsonNode after = transformer.transform(resources.formats.read(new File(cmd.getOptionValue("diff"))));
+        writeOutput(cmd, outputMapper, new DeploymentDiff(getApiVersion(cmd)).diff(before, after));
+    }
+
+    // both sides are compared in the reformatted form, secrets filtered
+    private DeploymentTransformer buildDiffTransformer(CommandLine cmd) {
+        String key = "diff" + optionKey(cmd, "select", "parallel") + optionKey(cmd, FILTER_OPTIONS);
+        DeploymentTransformer transformer = getCachedTransformer(key);
+        if (transformer == null) {
+            List<DeploymentTransformer> transformerChain = new LinkedList<DeploymentTransformer>();
+            transformerChain.add(buildReformatter(cmd));
+            if (cmd.hasOption("select")) {
+                transformerChain.add(buildSelector(cmd));
+            }
+            transformerChain.add(fieldFilter);
+            transformer = cacheTransformer(key, new FusedDeploymentTransformer(transformerChain));
+        }
+        return transformer;
+    }
+
+    // polls 'url' and writes the changes since the previous poll as json lines, in the format of 'diff'.
+    // An unchanged deployment writes nothing, and costs nothing more than the request if CM answers 304
+    private void watch(CommandLine cmd) throws IOException {
+        if (!cmd.hasOption("u") || cmd.hasOption("f"))
+            throw new RuntimeException("Option 'watch' requires option 'url' and no option 'file'");
+        if (cmd.hasOption("s") || cmd.hasOption("a") || cmd.hasOption("o") || cmd.hasOption("p")
+                || cmd.hasOption("gzip") || cmd.hasOption("cache") || cmd.hasOption("offline"))
+            throw new RuntimeException("Cannot specify option 'watch' with options 'sort', 'add', 'output-format', " +
+                    "'pretty_print', 'gzip', 'cache' or 'offline'");
+        long interval = Long.parseLong(cmd.getOptionValue("watch")) * 1000;
+        if (interval < 1000)
+            throw new RuntimeException("Option 'watch' requires an interval of at least 1 second");
+        final URL url = new URL(cmd.getOptionValue("u"));
+        DeploymentPoller.Fetch fetch;
+        // the sectioned fetch has no single validator, every poll reads the whole deployment
+        final SectionedDeploymentFetcher fetcher = cmd.hasOption("sectioned")
+                ? buildSectionedFetcher(cmd, cmd.getOptionValue("u")) : null;
+        if (fetcher != null) {
+            fetch = new DeploymentPoller.Fetch() {
+                public JsonNode fetch(Properties validators) throws IOException {
+                    return fetcher.fetch();
+                }
+            };
+        } else {
+            final CmApiClient client = buildApiClient(cmd, cmd.getOptionValue("u"));
+            fetch = new DeploymentPoller.Fetch() {
+                public JsonNode fetch(Properties validators) throws IOException {
+                    return client.readIfModified(url, validators);
+                }
+            };
+        }
+        DeploymentPoller poller = new DeploymentPoller(fetch,
+                new DeploymentChangeTracker(buildDiffTransformer(cmd), getApiVersion(cmd)));
         ObjectMapper outputMapper = buildOutputMapper(cmd);
-        System.out.println(outputMapper.writeValueAsString(runAllTransformers(cmd, original)));
+        OutputStream out = openOutput(cmd);
+        System.err.println("Watching " + url + " every " + cmd.getOptionValue("watch") + " seconds");
+        try {
+            long next = System.currentTimeMillis();
+            while (true) {
+                try {
+                    JsonNode changes = poller.poll();
+                    for (JsonNode change: changes) {
+                        outputMapper.writeValue(new CloseShieldOutputStream(out), change);
+                        writeLineSeparator(outputMapper, out);
+                    }
+                    out.flush();
+                } catch (IOException e) {
+                    // CM restarting or briefly unreachable, the next poll diffs against the last snapshot read
+                    System.err.println("Polling " + url + " failed: " + e.getMessage());
+                }
+                // polls that take longer than the interval are not made up for
+                next = Math.max(next + interval, System.currentTimeMillis());
+                long delay = next - System.currentTimeMillis();
+                if (delay > 0) {
+                    Thread.sleep(delay);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (fetcher != null) {
+                fetcher.close();
+            }
+            out.close();
+        }
+    }
+
+    // into the reference database, so the exported properties can be joined with the configuration table
+    private void export(CommandLine cmd) throws IOException {
+        if (cmd.hasOption("r") || cmd.hasOption("s") || cmd.hasOption("a") || cmd.hasOption("select"))
+            throw new RuntimeException("Cannot specify option 'export' with options 'reformat', 'sort', 'add' or 'select'");
+        if (cmd.hasOption("batch") && (cmd.hasOption("f") || cmd.hasOption("u") || cmd.hasOption("snapshot")))
+            throw new RuntimeException("Cannot specify option 'batch' with options 'file', 'url' or 'snapshot'");
+        String path = cmd.getOptionValue("reference", "configuration.db");
+        DeploymentConfigurationExporter exporter;
+        try {
+            exporter = new DeploymentConfigurationExporter(path, fieldFilter);
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+        exporter.setThreads(getThreads(cmd));
+        try {
+            if (cmd.hasOption("batch")) {
+                exporter.export(BatchDeploymentProcessor.listInputs(cmd.getOptionValue("batch")));
+                return;
+            }
+            JsonNode deployment = readDeploymentJson(cmd);
+            String snapshot = cmd.getOptionValue("snapshot");
+            if (snapshot == null) {
+                snapshot = cmd.hasOption("f") ? new File(cmd.getOptionValue("f")).getName()
+                        : deployment.path("timestamp").asText(null);
+            }
+            if (snapshot == null)
+                throw new RuntimeException("Option 'export' requires option 'snapshot' for a deployment without timestamp");
+            exporter.export(snapshot, deployment);
+        } catch (SQLException e) {
+            throw new IOException("Cannot export to " + path, e);
+        } finally {
+            exporter.close();
+        }
+    }
+
+    private void runBatch(final CommandLine cmd, ObjectMapper outputMapper) throws IOException {
+        if (cmd.hasOption("f") || cmd.hasOption("u"))
+            throw new RuntimeException("Cannot specify option 'batch' with options 'file' or 'url'");
+        if (!cmd.hasOption("output_dir"))
+            throw new RuntimeException("Option 'batch' requires option 'output_dir'");
+        int threads = getThreads(cmd);
+        long memoryBudget = cmd.hasOption("memory_budget")
+                ? Long.parseLong(cmd.getOptionValue("memory_budget")) * 1024 * 1024 : Runtime.getRuntime().maxMemory() / 2;
+        BatchDeploymentProcessor.TransformerFactory transformerFactory = new BatchDeploymentProcessor.TransformerFactory() {
+            public DeploymentTransformer create() {
+                return new FusedDeploymentTransformer(buildTransformerChain(cmd, true));
+            }
+        };
+        new BatchDeploymentProcessor(transformerFactory, outputMapper, cmd.getOptionValue("o", "json").toLowerCase(),
+                threads, memoryBudget).process(BatchDeploymentProcessor.listInputs(cmd.getOptionValue("batch")),
+                new File(cmd.getOptionValue("output_dir")));
+    }
+
+    // output is serialized straight into the target stream instead of through an output-sized string
+    private void writeOutput(CommandLine cmd, ObjectMapper outputMapper, JsonNode output) throws IOException {
+        OutputStream out = openOutput(cmd);
+        try {
+            // generators only flush everything they buffer when closing their target
+            outputMapper.writeValue(new CloseShieldOutputStream(out), output);
+            writeLineSeparator(outputMapper, out);
+        } finally {
+            out.close();
+        }
+    }
+
+    private OutputStream openOutput(CommandLine cmd) throws IOException {
+        OutputStream out = cmd.hasOption("output")
+                ? new FileOutputStream(cmd.getOptionValue("output")) : new CloseShieldOutputStream(stdout);
+        out = new BufferedOutputStream(out, OUTPUT_BUFFER_SIZE);
+        if (cmd.hasOption("gzip")) {
+            out = new GZIPOutputStream(out, OUTPUT_BUFFER_SIZE);
+        }
+        return out;
+    }
+
+    private void writeLineSeparator(ObjectMapper outputMapper, OutputStream out) throws IOException {
+        // text formats end with a newline like println did, binary formats end with their last token
+        if (!outputMapper.getFactory().canHandleBinaryNatively()) {
+            out.write(System.getProperty("line.separator").getBytes("UTF-8"));
+        }
     }
 
     private ObjectMapper buildOutputMapper(CommandLine cmd) {
+        String key = optionKey(cmd, "o", "p");
+        synchronized (resources) {
+            ObjectMapper mapper = resources.outputMappers.get(key);
+            if (mapper == null) {
+                mapper = newOutputMapper(cmd);
+                resources.outputMappers.put(key, mapper);
+            }
+            return mapper;
+        }
+    }
+
+    private ObjectMapper newOutputMapper(CommandLine cmd) {
         ObjectMapper mapper = new ObjectMapper();
         if (cmd.hasOption("o")) {
             String outputType = cmd.getOptionValue("o");
@@ -37,6 +461,10 @@ public class CmApiDeploymentProcessor {
                 mapper = new XmlMapper();
             } else if ("yaml".equalsIgnoreCase(outputType)) {
                 mapper = new YAMLMapper();
+            } else if ("smile".equalsIgnoreCase(outputType)) {
+                mapper = new ObjectMapper(DeploymentFormats.smileFactory());
+            } else if ("cbor".equalsIgnoreCase(outputType)) {
+                mapper = new ObjectMapper(DeploymentFormats.cborFactory());
             }
         }
         mapper.configure(SerializationFeature.INDENT_OUTPUT, cmd.hasOption("p"));
@@ -47,45 +475,162 @@ public class CmApiDeploymentProcessor {
         if (cmd.hasOption("f") && cmd.hasOption("u")) {
             throw new RuntimeException("Cannot specify both 'file' and 'url' input");
         }
-        ObjectMapper mapper = new ObjectMapper();
         if (cmd.hasOption("f")) {
-            String inputPath = cmd.getOptionValue("f");
-            return mapper.readValue(FileUtils.readFileToString(new File(inputPath)), JsonNode.class);
+            return resources.formats.read(new File(cmd.getOptionValue("f")));
         } else if (cmd.hasOption("u")) {
-            return mapper.readValue(new URL(cmd.getOptionValue("u")), JsonNode.class);
+            if (cmd.hasOption("cache") || cmd.hasOption("offline")) {
+                return readCachedDeploymentJson(cmd);
+            }
+            String url = cmd.getOptionValue("u");
+            if (cmd.hasOption("sectioned")) {
+                return fetchSectioned(cmd, url);
+            }
+            return buildApiClient(cmd, url).read(new URL(url));
+        } else if (input != null) {
+            return resources.formats.read(input);
         } else {
             throw new RuntimeException("Must specify one of 'file' or 'url' parameters");
         }
     }
 
-    private JsonNode runAllTransformers(CommandLine cmd, JsonNode output) {
-        List<DeploymentTransformer> transformerChain = buildTransformerChain(cmd);
-        for (DeploymentTransformer transformer: transformerChain) {
-            output = transformer.transform(output);
+    private JsonNode readSelectedDeploymentJson(CommandLine cmd) throws IOException {
+        TokenBuffer selected = new TokenBuffer(null, false);
+        new StreamingDeploymentReformatter(null, buildSelector(cmd), fieldFilter).reformat(new File(cmd.getOptionValue("f")), selected);
+        return resources.formats.read(selected.asParser());
+    }
+
+    private JsonNode readCachedDeploymentJson(final CommandLine cmd) throws IOException {
+        final String url = cmd.getOptionValue("u");
+        File cacheDir = cmd.hasOption("cache_dir") ? new File(cmd.getOptionValue("cache_dir")) : DeploymentCache.defaultDirectory();
+        long ttl = Long.parseLong(cmd.getOptionValue("cache_ttl", "3600"));
+        DeploymentCache cache = new DeploymentCache(cacheDir, ttl * 1000, cmd.hasOption("offline"));
+        DeploymentCache.Download download;
+        if (cmd.hasOption("sectioned")) {
+            // the sectioned fetch has no single validator, so its entries are only refreshed by ttl
+            download = new DeploymentCache.Download() {
+                public boolean download(Properties validators, OutputStream out) throws IOException {
+                    new ObjectMapper().writeValue(out, fetchSectioned(cmd, url));
+                    return true;
+                }
+            };
+        } else {
+            download = new DeploymentCache.Download() {
+                public boolean download(Properties validators, OutputStream out) throws IOException {
+                    return buildApiClient(cmd, url).download(new URL(url), validators, out);
+                }
+            };
         }
+        return cache.read(url, cmd.getOptionValue("user"), cmd.hasOption("sectioned"), download);
+    }
+
+    private JsonNode fetchSectioned(CommandLine cmd, String url) throws IOException {
+        SectionedDeploymentFetcher fetcher = buildSectionedFetcher(cmd, url);
+        try {
+            return fetcher.fetch();
+        } finally {
+            fetcher.close();
+        }
+    }
+
+    private SectionedDeploymentFetcher buildSectionedFetcher(CommandLine cmd, String url) {
+        String apiRoot = url.replaceFirst("/cm/deployment/?(\\?.*)?$", "");
+        return new SectionedDeploymentFetcher(buildApiClient(cmd, apiRoot), getThreads(cmd));
+    }
+
+    private JsonNode runAllTransformers(CommandLine cmd, JsonNode output, RunStats stats, boolean reformat) {
+        String key = "chain" + reformat + optionKey(cmd, CHAIN_OPTIONS) + optionKey(cmd, FILTER_OPTIONS);
+        DeploymentTransformer transformer = getCachedTransformer(key);
+        if (transformer == null) {
+            transformer = cacheTransformer(key, new FusedDeploymentTransformer(buildTransformerChain(cmd, reformat)));
+        }
+        // the chain runs fused, so it is timed as a single stage
+        RunStats.Stage stage = stats.start("transform", output);
+        output = transformer.transform(output);
+        stage.stop(output);
         return output;
     }
 
-    private List<DeploymentTransformer> buildTransformerChain(CommandLine cmd) {
+    // transformers keep state while transforming, so each thread reuses its own chains
+    private DeploymentTransformer getCachedTransformer(String key) {
+        return resources.transformers.get().get(key);
+    }
+
+    private DeploymentTransformer cacheTransformer(String key, DeploymentTransformer transformer) {
+        Map<String, DeploymentTransformer> transformers = resources.transformers.get();
+        if (transformers.size() >= MAX_CACHED_TRANSFORMERS) {
+            transformers.clear();
+        }
+        transformers.put(key, transformer);
+        return transformer;
+    }
+
+    // the values of the given options, as key of what is built from them
+    private static String optionKey(CommandLine cmd, String... names) {
+        StringBuilder key = new StringBuilder();
+        for (String name: names) {
+            key.append(name).append('=');
+            if (cmd.hasOption(name)) {
+                String[] values = cmd.getOptionValues(name);
+                key.append(values == null ? "" : Arrays.toString(values));
+            } else {
+                key.append('-');
+            }
+            key.append(';');
+        }
+        return key.toString();
+    }
+
+    // without reformat the input has already been reformatted and selected while reading
+    private List<DeploymentTransformer> buildTransformerChain(CommandLine cmd, boolean reformat) {
         List<DeploymentTransformer> transformerChain = new LinkedList<DeploymentTransformer>();
 
-        if (cmd.hasOption("r")) {
-            transformerChain.add(new DeploymentReformatter());
+        if (cmd.hasOption("r") && reformat) {
+            transformerChain.add(buildReformatter(cmd));
+        }
+        if (cmd.hasOption("select") && reformat) {
+            transformerChain.add(buildSelector(cmd));
         }
         if (cmd.hasOption("s")) {
             transformerChain.add(new ObjectNodeFieldSorter());
         }
         if (cmd.hasOption("a")) {
-            // TODO add different enrichment types
-            System.out.println(Arrays.toString(cmd.getOptionValues("a")));
             if (!cmd.hasOption("r"))
                 throw new RuntimeException("Cannot specify option 'add_api_paths' without option 'reformat'");
             transformerChain.add(new DeploymentApiPathIncluder(getApiVersion(cmd)));
         }
-        transformerChain.add(new ObjectNodeFieldFilter());
+        transformerChain.add(fieldFilter);
         return transformerChain;
     }
 
+    // one pool for the whole process, sized by the first run that asks for it
+    private DeploymentReformatter buildReformatter(CommandLine cmd) {
+        if (!cmd.hasOption("parallel"))
+            return new DeploymentReformatter();
+        synchronized (resources) {
+            if (resources.pool == null) {
+                resources.pool = new ForkJoinPool(getThreads(cmd));
+            }
+            return new DeploymentReformatter(resources.pool);
+        }
+    }
+
+    private DeploymentPathSelector buildSelector(CommandLine cmd) {
+        if (!cmd.hasOption("select"))
+            return null;
+        return new DeploymentPathSelector(Arrays.asList(cmd.getOptionValues("select")));
+    }
+
+    private CmApiClient buildApiClient(CommandLine cmd, String apiRoot) {
+        int timeout = Integer.parseInt(cmd.getOptionValue("timeout", "300"));
+        return new CmApiClient(apiRoot, cmd.getOptionValue("user"), cmd.getOptionValue("pass"), timeout * 1000);
+    }
+
+    private int getThreads(CommandLine cmd) {
+        if (cmd.hasOption("threads"))
+            return Integer.parseInt(cmd.getOptionValue("threads"));
+        return Runtime.getRuntime().availableProcessors();
+    }
+
     private String getApiVersion(CommandLine cmd) {
         if (cmd.hasOption("v"))
             return "v" + cmd.getOptionValue("v");
@@ -112,10 +657,88 @@ public class CmApiDeploymentProcessor {
                 .longOpt("help")
                 .build());
         options.addOption(Option.builder("o")
-                .desc("Output format json (default), xml or yaml")
+                .desc("Output format json (default), xml, yaml, smile or cbor")
                 .longOpt("output-format")
                 .hasArg().argName("FORMAT")
                 .build());
+        options.addOption(Option.builder()
+                .desc("Print time, allocation and tree size of reading, transforming and writing to stderr")
+                .longOpt("stats")
+                .build());
+        options.addOption(Option.builder()
+                .desc("Write output to FILE instead of stdout")
+                .longOpt("output")
+                .hasArg().argName("FILE")
+                .build());
+        options.addOption(Option.builder()
+                .desc("Gzip the output")
+                .longOpt("gzip")
+                .build());
+        options.addOption(Option.builder()
+                .desc("Reformat by streaming tokens from file to output without building a tree (requires 'reformat' and 'file')")
+                .longOpt("stream")
+                .build());
+        options.addOption(Option.builder()
+                .desc("Only output the subtrees at these api paths, e.g. /api/v10/clusters/*/services/hdfs (requires 'reformat', repeat or separate with ',')")
+                .longOpt("select")
+                .hasArgs().valueSeparator(',').argName("API_PATH")
+                .build());
+        options.addOption(Option.builder()
+                .desc("Print the changes from the input deployment to the deployment in FILE")
+                .longOpt("diff")
+                .hasArg().argName("FILE")
+                .build());
+        options.addOption(Option.builder()
+                .desc("Report the properties that differ from their reference defaults")
+                .longOpt("non_defaults")
+                .build());
+        options.addOption(Option.builder()
+                .desc("Configuration reference database (default configuration.db)")
+                .longOpt("reference")
+                .hasArg().argName("DB")
+                .build());
+        options.addOption(Option.builder()
+                .desc("Export every configured property of the deployment, or of each 'batch' file, as a row of table deployment_configuration in the 'reference' database")
+                .longOpt("export")
+                .build());
+        options.addOption(Option.builder()
+                .desc("Name of the exported deployment (default the file name, or the deployment timestamp)")
+                .longOpt("snapshot")
+                .hasArg().argName("NAME")
+                .build());
+        options.addOption(Option.builder()
+                .desc("Also drop the fields matching these names or globs with '*' and '?' (repeat or separate with ',')")
+                .longOpt("redact")
+                .hasArgs().valueSeparator(',').argName("GLOB")
+                .build());
+        options.addOption(Option.builder()
+                .desc("Also drop every property marked sensitive in the configuration reference database")
+                .longOpt("redact_sensitive")
+                .build());
+        options.addOption(Option.builder()
+                .desc("Process every deployment json file in a directory or matching a glob")
+                .longOpt("batch")
+                .hasArg().argName("DIR|GLOB")
+                .build());
+        options.addOption(Option.builder()
+                .desc("Directory for the files written by 'batch'")
+                .longOpt("output_dir")
+                .hasArg().argName("DIR")
+                .build());
+        options.addOption(Option.builder()
+                .desc("Number of files processed concurrently by 'batch', requests run concurrently by 'sectioned' or cores used by 'parallel' (default available processors)")
+                .longOpt("threads")
+                .hasArg().argName("N")
+                .build());
+        options.addOption(Option.builder()
+                .desc("Reformat the entries of large collections like hosts and roles in parallel on 'threads' cores")
+                .longOpt("parallel")
+                .build());
+        options.addOption(Option.builder()
+                .desc("Memory for the files in flight in 'batch' (default half the max heap)")
+                .longOpt("memory_budget")
+                .hasArg().argName("MB")
+                .build());
         options.addOption(Option.builder("s")
                 .desc("Sort the json object fields")
                 .longOpt("sort")
@@ -126,7 +749,7 @@ public class CmApiDeploymentProcessor {
                 .hasArg().argName("VERSION")
                 .build());
         options.addOption(Option.builder("f")
-                .desc("Deployment json file to load")
+                .desc("Deployment json, smile or cbor file to load")
                 .longOpt("file")
                 .hasArg().argName("FILE")
                 .build());
@@ -135,6 +758,43 @@ public class CmApiDeploymentProcessor {
                 .longOpt("url")
                 .hasArg().argName("URL")
                 .build());
+        options.addOption(Option.builder()
+                .desc("Fetch clusters, services, roles, hosts and cm settings from their own endpoints concurrently and assemble the deployment, keeping 'threads' connections alive unless -Dhttp.maxConnections is set (requires 'url')")
+                .longOpt("sectioned")
+                .build());
+        options.addOption(Option.builder()
+                .desc("CM API connect and read timeout (default 300)")
+                .longOpt("timeout")
+                .hasArg().argName("SECONDS")
+                .build());
+        options.addOption(Option.builder()
+                .desc("Cache deployments fetched from 'url' on local disk")
+                .longOpt("cache")
+                .build());
+        options.addOption(Option.builder()
+                .desc("Directory for cached deployments (default ~/.cm-api-utils/cache)")
+                .longOpt("cache_dir")
+                .hasArg().argName("DIR")
+                .build());
+        options.addOption(Option.builder()
+                .desc("Age after which a cached deployment is revalidated with CM (default 3600)")
+                .longOpt("cache_ttl")
+                .hasArg().argName("SECONDS")
+                .build());
+        options.addOption(Option.builder()
+                .desc("Serve 'url' from the cache only, never contact CM")
+                .longOpt("offline")
+                .build());
+        options.addOption(Option.builder()
+                .desc("Poll 'url' every SECONDS and print the changes since the previous poll as json lines like 'diff', nothing while nothing changed")
+                .longOpt("watch")
+                .hasArg().argName("SECONDS")
+                .build());
+        options.addOption(Option.builder()
+                .desc("Serve requests over HTTP on localhost PORT from a warm JVM, the body holds the deployment and the query string the transform and output options without dashes (e.g. ?r&select=/api/v10/cm/config), the output is the response")
+                .longOpt("serve")
+                .hasArg().argName("PORT")
+                .build());
         options.addOption(Option.builder("user")
                 .desc("Username for CM API")
                 .hasArg().argName("USER")
@@ -146,6 +806,33 @@ public class CmApiDeploymentProcessor {
         return options;
     }
 
+    // everything built from options that can outlive a single run, shared by all requests of a server
+    static class Resources implements Closeable {
+
+        private final DeploymentFormats formats = new DeploymentFormats();
+        private final Map<String, ObjectMapper> outputMappers = new HashMap<String, ObjectMapper>();
+        private final Map<String, ObjectNodeFieldFilter> fieldFilters = new HashMap<String, ObjectNodeFieldFilter>();
+        private final Map<String, ConfigurationReference> references = new HashMap<String, ConfigurationReference>();
+        private final ThreadLocal<Map<String, DeploymentTransformer>> transformers =
+                new ThreadLocal<Map<String, DeploymentTransformer>>() {
+                    protected Map<String, DeploymentTransformer> initialValue() {
+                        return new HashMap<String, DeploymentTransformer>();
+                    }
+                };
+        private ForkJoinPool pool;
+
+        public synchronized void close() throws IOException {
+            for (ConfigurationReference reference: references.values()) {
+                reference.close();
+            }
+            references.clear();
+            if (pool != null) {
+                pool.shutdown();
+                pool = null;
+            }
+        }
+    }
+
     private static void printHelp(Options options) {
         HelpFormatter formatter = new HelpFormatter();
         formatter.printHelp("CM API cm/deployment Utils", "", options, "", true);
@@ -160,7 +847,17 @@ public class CmApiDeploymentProcessor {
                 printHelp(options);
                 System.exit(0);
             }
-            new CmApiDeploymentProcessor().run(cmd);
+            CmApiDeploymentProcessor processor = new CmApiDeploymentProcessor();
+            // the JDK keeps at most http.maxConnections idle connections per server alive, for every connection
+            // of the process, and reads the property once, so it is set before the first request
+            if (cmd.hasOption("sectioned") && System.getProperty("http.maxConnections") == null) {
+                System.setProperty("http.maxConnections", String.valueOf(processor.getThreads(cmd)));
+            }
+            try {
+                processor.run(cmd);
+            } finally {
+                processor.resources.close();
+            }
         } catch (ParseException e) {
             System.err.println(e.getMessage());
             printHelp(options);
@@ -0,0 +1,156 @@
+package com.cloudera.ps.cm.api.client;
+
+import com.cloudera.ps.cm.api.deployment.format.DeploymentFormats;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Charsets;
+import com.google.common.io.BaseEncoding;
+import org.apache.commons.io.IOUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Properties;
+import java.util.zip.GZIPInputStream;
+
+public class CmApiClient {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final DeploymentFormats formats = new DeploymentFormats();
+    private final String apiRoot;
+    private final String authorization;
+    private final int timeoutMillis;
+
+    public CmApiClient(String apiRoot, String user, String password, int timeoutMillis) {
+        this.apiRoot = apiRoot.endsWith("/") ? apiRoot.substring(0, apiRoot.length() - 1) : apiRoot;
+        this.authorization = user == null ? null
+                : "Basic " + BaseEncoding.base64().encode((user + ":" + password).getBytes(Charsets.UTF_8));
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    public JsonNode get(String path) throws IOException {
+        return read(new URL(apiRoot + path), false);
+    }
+
+    // for endpoints missing from older API versions or deployments
+    public JsonNode getIfExists(String path) throws IOException {
+        return read(new URL(apiRoot + path), true);
+    }
+
+    public JsonNode read(URL url) throws IOException {
+        return read(url, false);
+    }
+
+    // conditional GET that copies the response body to out, the etag and last_modified validators are
+    // sent from and stored back into the given properties. Returns false if the server answered 304
+    public boolean download(URL url, Properties validators, OutputStream out) throws IOException {
+        HttpURLConnection connection = connectIfModified(url, validators);
+        if (connection == null) {
+            return false;
+        }
+        InputStream in = body(connection);
+        try {
+            IOUtils.copyLarge(in, out);
+        } finally {
+            in.close();
+        }
+        storeValidators(connection, validators);
+        return true;
+    }
+
+    // conditional GET as for download, parsing the response body instead. Returns null if the server answered 304
+    public JsonNode readIfModified(URL url, Properties validators) throws IOException {
+        HttpURLConnection connection = connectIfModified(url, validators);
+        if (connection == null) {
+            return null;
+        }
+        JsonNode node;
+        InputStream in = body(connection);
+        try {
+            node = formats.read(mapper.getFactory().createParser(in));
+        } finally {
+            in.close();
+        }
+        storeValidators(connection, validators);
+        return node;
+    }
+
+    private HttpURLConnection connectIfModified(URL url, Properties validators) throws IOException {
+        HttpURLConnection connection = connect(url);
+        if (validators.getProperty("etag") != null) {
+            connection.setRequestProperty("If-None-Match", validators.getProperty("etag"));
+        }
+        if (validators.getProperty("last_modified") != null) {
+            connection.setRequestProperty("If-Modified-Since", validators.getProperty("last_modified"));
+        }
+        int status = connection.getResponseCode();
+        if (status == HttpURLConnection.HTTP_NOT_MODIFIED) {
+            IOUtils.closeQuietly(connection.getInputStream());
+            return null;
+        }
+        if (status != HttpURLConnection.HTTP_OK) {
+            throw failure(url, connection, status);
+        }
+        return connection;
+    }
+
+    private void storeValidators(HttpURLConnection connection, Properties validators) {
+        validators.remove("etag");
+        validators.remove("last_modified");
+        if (connection.getHeaderField("ETag") != null) {
+            validators.setProperty("etag", connection.getHeaderField("ETag"));
+        }
+        if (connection.getHeaderField("Last-Modified") != null) {
+            validators.setProperty("last_modified", connection.getHeaderField("Last-Modified"));
+        }
+    }
+
+    private JsonNode read(URL url, boolean optional) throws IOException {
+        HttpURLConnection connection = connect(url);
+        int status = connection.getResponseCode();
+        if (optional && status == HttpURLConnection.HTTP_NOT_FOUND) {
+            failure(url, connection, status);
+            return null;
+        }
+        if (status != HttpURLConnection.HTTP_OK) {
+            throw failure(url, connection, status);
+        }
+        InputStream in = body(connection);
+        try {
+            return formats.read(mapper.getFactory().createParser(in));
+        } finally {
+            in.close();
+        }
+    }
+
+    private HttpURLConnection connect(URL url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setConnectTimeout(timeoutMillis);
+        connection.setReadTimeout(timeoutMillis);
+        connection.setRequestProperty("Accept", "application/json");
+        connection.setRequestProperty("Accept-Encoding", "gzip");
+        if (authorization != null) {
+            connection.setRequestProperty("Authorization", authorization);
+        }
+        return connection;
+    }
+
+    private InputStream body(HttpURLConnection connection) throws IOException {
+        InputStream in = connection.getInputStream();
+        if ("gzip".equalsIgnoreCase(connection.getContentEncoding())) {
+            in = new GZIPInputStream(in);
+        }
+        return in;
+    }
+
+    private IOException failure(URL url, HttpURLConnection connection, int status) throws IOException {
+        // drain the error body so the connection can go back to the keep-alive pool
+        InputStream error = connection.getErrorStream();
+        String message = error == null ? "" : IOUtils.toString(error, "UTF-8");
+        IOUtils.closeQuietly(error);
+        return new IOException("GET " + url + " returned " + status + " " + connection.getResponseMessage() +
+                (message.isEmpty() ? "" : ": " + message));
+    }
+}
@@ -0,0 +1,157 @@
+package com.cloudera.ps.cm.api.client;
+
+import com.cloudera.ps.cm.api.deployment.format.DeploymentFormats;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Properties;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+public class DeploymentCache {
+
+    public interface Download {
+        // writes the deployment to out and updates the validators, returns false if the cached copy is still current
+        boolean download(Properties validators, OutputStream out) throws IOException;
+    }
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final DeploymentFormats formats = new DeploymentFormats();
+    private final File directory;
+    private final long ttlMillis;
+    private final boolean offline;
+
+    public DeploymentCache(File directory, long ttlMillis, boolean offline) {
+        this.directory = directory;
+        this.ttlMillis = ttlMillis;
+        this.offline = offline;
+    }
+
+    public static File defaultDirectory() {
+        return new File(System.getProperty("user.home"), ".cm-api-utils/cache");
+    }
+
+    // entries are keyed by url and user, each one file holding the validators for revalidation followed by the
+    // gzipped document, with the fetch time as its modification time. Entries are replaced by an atomic move, so
+    // concurrent runs read either the old or the new entry whole, never a partial one or a document with the
+    // validators of another. Cached documents are not redacted yet, the files are only readable by their owner
+    public JsonNode read(String url, String user, boolean sectioned, Download download) throws IOException {
+        String key = Hashing.sha256().hashString(url + "\n" + user + "\n" + sectioned, Charsets.UTF_8).toString();
+        File file = new File(directory, key + ".entry");
+        long now = System.currentTimeMillis();
+        Properties entry = null;
+        if (file.isFile()) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+            try {
+                entry = readValidators(in);
+                if (offline || now - file.lastModified() < ttlMillis) {
+                    return readData(in);
+                }
+            } finally {
+                in.close();
+            }
+        } else if (offline) {
+            throw new IOException("No cached deployment for " + url + " in offline mode");
+        }
+        createDirectory();
+        if (entry == null) {
+            entry = new Properties();
+            entry.setProperty("url", url);
+            if (user != null) {
+                entry.setProperty("user", user);
+            }
+        }
+        // temporary files are created readable by the owner only
+        Path downloaded = Files.createTempFile(directory.toPath(), key, ".tmp");
+        Path updated = null;
+        try {
+            boolean modified;
+            OutputStream out = new GZIPOutputStream(new BufferedOutputStream(Files.newOutputStream(downloaded), BUFFER_SIZE), BUFFER_SIZE);
+            try {
+                modified = download.download(entry, out);
+            } finally {
+                out.close();
+            }
+            if (!modified) {
+                if (!file.setLastModified(now)) {
+                    throw new IOException("Cannot update the fetch time of " + file);
+                }
+                return read(file);
+            }
+            updated = Files.createTempFile(directory.toPath(), key, ".tmp");
+            DataOutputStream entryOut = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(updated), BUFFER_SIZE));
+            try {
+                writeValidators(entry, entryOut);
+                Files.copy(downloaded, entryOut);
+            } finally {
+                entryOut.close();
+            }
+            Files.move(updated, file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            return read(file);
+        } finally {
+            Files.deleteIfExists(downloaded);
+            if (updated != null) {
+                Files.deleteIfExists(updated);
+            }
+        }
+    }
+
+    private void createDirectory() throws IOException {
+        if (directory.isDirectory()) {
+            return;
+        }
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            Files.createDirectories(directory.toPath(),
+                    PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+        } else {
+            Files.createDirectories(directory.toPath());
+        }
+    }
+
+    private Properties readValidators(DataInputStream in) throws IOException {
+        byte[] validators = new byte[in.readInt()];
+        in.readFully(validators);
+        Properties entry = new Properties();
+        entry.load(new ByteArrayInputStream(validators));
+        return entry;
+    }
+
+    private void writeValidators(Properties entry, DataOutputStream out) throws IOException {
+        ByteArrayOutputStream validators = new ByteArrayOutputStream();
+        entry.store(validators, null);
+        out.writeInt(validators.size());
+        validators.writeTo(out);
+    }
+
+    private JsonNode read(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+        try {
+            readValidators(in);
+            return readData(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    private JsonNode readData(InputStream in) throws IOException {
+        return formats.read(new GZIPInputStream(in, BUFFER_SIZE));
+    }
+}
@@ -0,0 +1,146 @@
+package com.cloudera.ps.cm.api.client;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// the request threads are kept across fetches, so repeated fetches like the polls of --watch reuse them
+public class SectionedDeploymentFetcher implements Closeable {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final CmApiClient client;
+    private final ExecutorService executor;
+
+    public SectionedDeploymentFetcher(CmApiClient client, int threads) {
+        this.client = client;
+        this.executor = Executors.newFixedThreadPool(threads);
+    }
+
+    // assembles the same document as cm/deployment from the per-resource endpoints, requests
+    // of each level run concurrently once the level above is known
+    public JsonNode fetch() throws IOException {
+        List<Future<JsonNode>> submitted = new ArrayList<Future<JsonNode>>();
+        try {
+            Future<JsonNode> clusters = submit(submitted, "/clusters?view=export", false);
+            Future<JsonNode> hosts = submit(submitted, "/hosts?view=export", false);
+            Future<JsonNode> users = submit(submitted, "/users", false);
+            Future<JsonNode> versionInfo = submit(submitted, "/cm/version", false);
+            Future<JsonNode> managementService = submit(submitted, "/cm/service?view=export", true);
+            Future<JsonNode> managementRoles = submit(submitted, "/cm/service/roles?view=export", true);
+            Future<JsonNode> managementRoleConfigGroups = submit(submitted, "/cm/service/roleConfigGroups?view=export", true);
+            Future<JsonNode> managerSettings = submit(submitted, "/cm/config?view=export", false);
+            Future<JsonNode> allHostsConfig = submit(submitted, "/cm/allHosts/config?view=export", true);
+            Future<JsonNode> peers = submit(submitted, "/cm/peers", true);
+
+            List<ObjectNode> clusterNodes = new ArrayList<ObjectNode>();
+            List<Future<JsonNode>> services = new ArrayList<Future<JsonNode>>();
+            List<Future<JsonNode>> parcels = new ArrayList<Future<JsonNode>>();
+            for (JsonNode cluster : result(clusters).path("items")) {
+                String clusterPath = "/clusters/" + encode(cluster.path("name").asText());
+                clusterNodes.add((ObjectNode) cluster);
+                services.add(submit(submitted, clusterPath + "/services?view=export", false));
+                parcels.add(submit(submitted, clusterPath + "/parcels", true));
+            }
+
+            List<ObjectNode> serviceNodes = new ArrayList<ObjectNode>();
+            List<Future<JsonNode>> roles = new ArrayList<Future<JsonNode>>();
+            List<Future<JsonNode>> roleConfigGroups = new ArrayList<Future<JsonNode>>();
+            for (int i = 0; i < clusterNodes.size(); i++) {
+                String clusterPath = "/clusters/" + encode(clusterNodes.get(i).path("name").asText());
+                ArrayNode clusterServices = clusterNodes.get(i).putArray("services");
+                for (JsonNode service : result(services.get(i)).path("items")) {
+                    String servicePath = clusterPath + "/services/" + encode(service.path("name").asText());
+                    serviceNodes.add((ObjectNode) service);
+                    clusterServices.add(service);
+                    roles.add(submit(submitted, servicePath + "/roles?view=export", false));
+                    roleConfigGroups.add(submit(submitted, servicePath + "/roleConfigGroups?view=export", false));
+                }
+                setItems(clusterNodes.get(i), "parcels", result(parcels.get(i)));
+            }
+            for (int i = 0; i < serviceNodes.size(); i++) {
+                setItems(serviceNodes.get(i), "roles", result(roles.get(i)));
+                setItems(serviceNodes.get(i), "roleConfigGroups", result(roleConfigGroups.get(i)));
+            }
+
+            ObjectNode deployment = mapper.createObjectNode();
+            SimpleDateFormat timestamp = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+            timestamp.setTimeZone(TimeZone.getTimeZone("UTC"));
+            deployment.put("timestamp", timestamp.format(new Date()));
+            deployment.putArray("clusters").addAll(clusterNodes);
+            setItems(deployment, "hosts", result(hosts));
+            setItems(deployment, "users", result(users));
+            deployment.set("versionInfo", result(versionInfo));
+            JsonNode managementServiceNode = result(managementService);
+            if (managementServiceNode != null) {
+                setItems((ObjectNode) managementServiceNode, "roles", result(managementRoles));
+                setItems((ObjectNode) managementServiceNode, "roleConfigGroups", result(managementRoleConfigGroups));
+                deployment.set("managementService", managementServiceNode);
+            }
+            deployment.set("managerSettings", result(managerSettings));
+            JsonNode allHostsConfigNode = result(allHostsConfig);
+            if (allHostsConfigNode != null) {
+                deployment.set("allHostsConfig", allHostsConfigNode);
+            }
+            setItems(deployment, "peers", result(peers));
+            return deployment;
+        } finally {
+            // a failed fetch leaves no requests running into the next one
+            for (Future<JsonNode> future : submitted) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private Future<JsonNode> submit(List<Future<JsonNode>> submitted, final String path, final boolean optional) {
+        Future<JsonNode> future = executor.submit(new Callable<JsonNode>() {
+            public JsonNode call() throws IOException {
+                return optional ? client.getIfExists(path) : client.get(path);
+            }
+        });
+        submitted.add(future);
+        return future;
+    }
+
+    private JsonNode result(Future<JsonNode> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while fetching deployment", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    private void setItems(ObjectNode parent, String fieldName, JsonNode list) {
+        if (list != null && list.has("items")) {
+            parent.set(fieldName, list.get("items"));
+        }
+    }
+
+    private static String encode(String name) throws IOException {
+        return URLEncoder.encode(name, "UTF-8").replace("+", "%20");
+    }
+}
@@ -0,0 +1,142 @@
+package com.cloudera.ps.cm.api.deployment.batch;
+
+import com.cloudera.ps.cm.api.deployment.format.DeploymentFormats;
+import com.cloudera.ps.cm.api.deployment.transform.DeploymentTransformer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.filefilter.SuffixFileFilter;
+import org.apache.commons.io.filefilter.WildcardFileFilter;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class BatchDeploymentProcessor {
+
+    public interface TransformerFactory {
+        DeploymentTransformer create();
+    }
+
+    // a parsed deployment and its transformed copy take several times the size of the json text
+    private static final int TREE_EXPANSION = 8;
+    private static final long PERMIT_SIZE = 1024 * 1024;
+
+    private final DeploymentFormats formats = new DeploymentFormats();
+    private final ObjectMapper outputMapper;
+    private final String outputExtension;
+    private final TransformerFactory transformerFactory;
+    private final int threads;
+    private final long memoryBudget;
+
+    public BatchDeploymentProcessor(TransformerFactory transformerFactory, ObjectMapper outputMapper,
+                                    String outputExtension, int threads, long memoryBudget) {
+        this.transformerFactory = transformerFactory;
+        this.outputMapper = outputMapper;
+        this.outputExtension = outputExtension;
+        this.threads = threads;
+        this.memoryBudget = memoryBudget;
+    }
+
+    public static List<File> listInputs(String directoryOrGlob) {
+        File input = new File(directoryOrGlob);
+        File[] files;
+        if (input.isDirectory()) {
+            files = input.listFiles((FileFilter) new SuffixFileFilter(new String[] {".json", ".smile", ".cbor"}));
+        } else {
+            File directory = input.getAbsoluteFile().getParentFile();
+            files = directory.listFiles((FileFilter) new WildcardFileFilter(input.getName()));
+        }
+        if (files == null) {
+            throw new RuntimeException("Cannot list deployment files in " + directoryOrGlob);
+        }
+        Arrays.sort(files);
+        List<File> inputs = new ArrayList<File>();
+        for (File file : files) {
+            if (file.isFile()) {
+                inputs.add(file);
+            }
+        }
+        return inputs;
+    }
+
+    public void process(List<File> inputs, final File outputDirectory) throws IOException {
+        if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+            throw new IOException("Cannot create output directory " + outputDirectory);
+        }
+        // files are admitted while their estimated footprint fits the budget, one larger than
+        // the whole budget runs on its own
+        final int budgetPermits = Math.max(1, (int) Math.min(Integer.MAX_VALUE, memoryBudget / PERMIT_SIZE));
+        final Semaphore memory = new Semaphore(budgetPermits);
+        final long[] latencies = new long[inputs.size()];
+        final AtomicInteger failures = new AtomicInteger();
+        long totalBytes = 0;
+        long start = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            for (int i = 0; i < inputs.size(); i++) {
+                final int index = i;
+                final File input = inputs.get(i);
+                totalBytes += input.length();
+                final int permits = (int) Math.min(budgetPermits,
+                        Math.max(1, input.length() * TREE_EXPANSION / PERMIT_SIZE));
+                memory.acquireUninterruptibly(permits);
+                executor.execute(new Runnable() {
+                    public void run() {
+                        long fileStart = System.nanoTime();
+                        try {
+                            processFile(input, new File(outputDirectory,
+                                    FilenameUtils.getBaseName(input.getName()) + "." + outputExtension));
+                        } catch (Exception e) {
+                            failures.incrementAndGet();
+                            System.err.println("Failed to process " + input + ": " + e);
+                        } finally {
+                            latencies[index] = System.nanoTime() - fileStart;
+                            memory.release(permits);
+                        }
+                    }
+                });
+            }
+        } finally {
+            executor.shutdown();
+        }
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            throw new IOException("Interrupted while waiting for batch to complete", e);
+        }
+        printStats(inputs.size(), failures.get(), totalBytes, System.nanoTime() - start, latencies);
+    }
+
+    private void processFile(File input, File output) throws IOException {
+        JsonNode deployment = formats.read(input);
+        outputMapper.writeValue(output, transformerFactory.create().transform(deployment));
+    }
+
+    private void printStats(int files, int failed, long bytes, long elapsed, long[] latencies) {
+        double seconds = elapsed / 1e9;
+        double megabytes = bytes / (1024.0 * 1024.0);
+        System.out.println(String.format("Processed %d files (%d failed, %.1f MB) in %.1fs (%.1f files/sec, %.1f MB/sec)",
+                files, failed, megabytes, seconds, files / seconds, megabytes / seconds));
+        if (latencies.length > 0) {
+            Arrays.sort(latencies);
+            System.out.println(String.format("Latency p50 %.0fms, p90 %.0fms, p99 %.0fms, max %.0fms",
+                    percentile(latencies, 50), percentile(latencies, 90), percentile(latencies, 99),
+                    latencies[latencies.length - 1] / 1e6));
+        }
+    }
+
+    // nearest rank
+    private static double percentile(long[] sorted, int percentile) {
+        int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+        return sorted[Math.max(0, rank - 1)] / 1e6;
+    }
+}
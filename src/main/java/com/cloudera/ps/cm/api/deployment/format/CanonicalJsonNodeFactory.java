@@ -0,0 +1,40 @@
+package com.cloudera.ps.cm.api.deployment.format;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.TextNode;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// shares one TextNode, and so one String, between all occurrences of a short value within a tree.
+// Property names, role types, host names and most config values repeat thousands of times in a
+// deployment, the reformatter turns many of them into field names. Parsed field names themselves
+// are already interned by the parser. Not thread-safe, use one instance per tree
+public class CanonicalJsonNodeFactory extends JsonNodeFactory {
+
+    private static final long serialVersionUID = 1L;
+    private static final int MAX_LENGTH = 64;
+
+    private final Map<String, TextNode> textNodes = new HashMap<String, TextNode>();
+
+    public CanonicalJsonNodeFactory() {
+        super(false);
+    }
+
+    public TextNode textNode(String text) {
+        if (text == null || text.length() > MAX_LENGTH) {
+            return super.textNode(text);
+        }
+        TextNode node = textNodes.get(text);
+        if (node == null) {
+            node = super.textNode(text);
+            textNodes.put(text, node);
+        }
+        return node;
+    }
+
+    // the tree keeps a reference to its factory, drop the lookup table once the tree is built
+    public void release() {
+        textNodes.clear();
+    }
+}
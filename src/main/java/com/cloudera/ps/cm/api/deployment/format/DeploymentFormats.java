@@ -0,0 +1,85 @@
+package com.cloudera.ps.cm.api.deployment.format;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.format.DataFormatDetector;
+import com.fasterxml.jackson.core.format.DataFormatMatcher;
+import com.fasterxml.jackson.core.format.MatchStrength;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.cbor.CBORGenerator;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+public class DeploymentFormats {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final DataFormatDetector detector = new DataFormatDetector(new JsonFactory(), smileFactory(), cborFactory())
+            .withMinimalMatch(MatchStrength.WEAK_MATCH)
+            .withOptimalMatch(MatchStrength.FULL_MATCH);
+
+    // deployments repeat the same config keys and many values, smile writes each after the first
+    // occurrence as a back-reference
+    public static SmileFactory smileFactory() {
+        SmileFactory factory = new SmileFactory();
+        factory.configure(SmileGenerator.Feature.CHECK_SHARED_NAMES, true);
+        factory.configure(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES, true);
+        return factory;
+    }
+
+    // the self-describe tag lets readers tell cbor from json text
+    public static CBORFactory cborFactory() {
+        CBORFactory factory = new CBORFactory();
+        factory.configure(CBORGenerator.Feature.WRITE_TYPE_HEADER, true);
+        return factory;
+    }
+
+    // reads a json, smile or cbor deployment, detected from the leading bytes
+    public JsonNode read(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            return read(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    public JsonNode read(InputStream in) throws IOException {
+        return read(createParser(in));
+    }
+
+    // the parser closes the file
+    public JsonParser createParser(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            return createParser(in);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    private JsonParser createParser(InputStream in) throws IOException {
+        DataFormatMatcher match = detector.findFormat(in);
+        if (!match.hasMatch()) {
+            throw new IOException("Unrecognized deployment format");
+        }
+        return match.createParserWithMatch();
+    }
+
+    public JsonNode read(JsonParser parser) throws IOException {
+        CanonicalJsonNodeFactory nodeFactory = new CanonicalJsonNodeFactory();
+        try {
+            return mapper.reader().with(nodeFactory).readTree(parser);
+        } finally {
+            parser.close();
+            nodeFactory.release();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.cloudera.ps.cm.api.deployment.report;
+
+import com.cloudera.ps.cm.api.deployment.transform.DeploymentTransformer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.JsonNodeType;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.Iterator;
+import java.util.Map.Entry;
+
+// diffs each deployment of a series against the one before. The previous snapshot is kept reformatted
+// with its subtree hashes, and a deployment that reads the same as the previous one is recognized by
+// its fingerprint without being reformatted or hashed again
+public class DeploymentChangeTracker {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final DeploymentTransformer transformer;
+    private final DeploymentDiff diff;
+    private JsonNode snapshot;
+    private long fingerprint;
+
+    // the transformer is expected to reformat the deployments, as for DeploymentDiff
+    public DeploymentChangeTracker(DeploymentTransformer transformer, String apiVersion) {
+        this.transformer = transformer;
+        this.diff = new DeploymentDiff(apiVersion);
+    }
+
+    // the changes since the previous deployment, none for the first one. The deployment may be modified
+    public JsonNode update(JsonNode deployment) {
+        if (deployment.getNodeType() == JsonNodeType.OBJECT) {
+            // the export time changes with every read, it is not a change of the deployment
+            ((ObjectNode) deployment).remove("timestamp");
+        }
+        long fingerprint = fingerprint(deployment);
+        if (snapshot != null && fingerprint == this.fingerprint) {
+            return mapper.createArrayNode();
+        }
+        JsonNode next = transformer.transform(deployment);
+        JsonNode changes = snapshot == null ? mapper.createArrayNode() : diff.diffNext(snapshot, next);
+        this.snapshot = next;
+        this.fingerprint = fingerprint;
+        return changes;
+    }
+
+    // order sensitive and computed on the deployment as read, so it costs a walk over the tree but no
+    // copy of it. A reordered deployment only costs a diff that finds no changes
+    private static long fingerprint(JsonNode node) {
+        long hash = node.getNodeType().ordinal();
+        if (node.getNodeType() == JsonNodeType.OBJECT) {
+            Iterator<Entry<String, JsonNode>> fields = node.fields();
+            while (fields.hasNext()) {
+                Entry<String, JsonNode> field = fields.next();
+                hash = (hash * 31 + DeploymentDiff.hash(field.getKey())) * 31 + fingerprint(field.getValue());
+            }
+        } else if (node.getNodeType() == JsonNodeType.ARRAY) {
+            for (JsonNode element: node) {
+                hash = hash * 31 + fingerprint(element);
+            }
+        } else {
+            return DeploymentDiff.mix(hash * 31 + DeploymentDiff.hash(node.asText()));
+        }
+        return DeploymentDiff.mix(hash);
+    }
+}
@@ -0,0 +1,176 @@
+package com.cloudera.ps.cm.api.deployment.report;
+
+import com.cloudera.ps.cm.api.deployment.transform.DeploymentApiPathIncluder;
+import com.cloudera.ps.cm.api.deployment.transform.DeploymentPath;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeType;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+
+public class DeploymentDiff {
+
+    private static final long OBJECT_SEED = 0x6f626a656374L;
+    private static final long ARRAY_SEED = 0x6172726179L;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final DeploymentApiPathIncluder apiPaths;
+    private Map<JsonNode, Long> beforeHashes = new IdentityHashMap<JsonNode, Long>();
+    private Map<JsonNode, Long> afterHashes = new IdentityHashMap<JsonNode, Long>();
+    // the last 'after' deployment, whose hashes are kept in beforeHashes
+    private JsonNode hashed;
+
+    public DeploymentDiff(String apiVersion) {
+        this.apiPaths = new DeploymentApiPathIncluder(apiVersion);
+    }
+
+    // both deployments are expected in the reformatted form, where clusters, services, roles etc. are keyed by name
+    public JsonNode diff(JsonNode before, JsonNode after) {
+        JsonNode changes = diffNext(before, after);
+        beforeHashes.clear();
+        hashed = null;
+        return changes;
+    }
+
+    // for diffing a series of deployments: the subtree hashes of 'after' are kept, so it is not hashed
+    // again when it is passed as 'before' to the next call
+    public JsonNode diffNext(JsonNode before, JsonNode after) {
+        if (before != hashed) {
+            beforeHashes.clear();
+        }
+        afterHashes.clear();
+        ArrayNode changes = mapper.createArrayNode();
+        diff(changes, DeploymentPath.ROOT, "", before, after);
+        Map<JsonNode, Long> hashes = beforeHashes;
+        beforeHashes = afterHashes;
+        afterHashes = hashes;
+        afterHashes.clear();
+        hashed = after;
+        return changes;
+    }
+
+    private void diff(ArrayNode changes, DeploymentPath path, String pointer, JsonNode before, JsonNode after) {
+        if (hash(before, beforeHashes) == hash(after, afterHashes)) {
+            return;
+        }
+        if (before.getNodeType() == JsonNodeType.OBJECT && after.getNodeType() == JsonNodeType.OBJECT) {
+            Iterator<Entry<String, JsonNode>> fields = before.fields();
+            while (fields.hasNext()) {
+                Entry<String, JsonNode> field = fields.next();
+                String fieldName = field.getKey();
+                String fieldPointer = pointer + "/" + escape(fieldName);
+                JsonNode afterValue = after.get(fieldName);
+                if (afterValue == null) {
+                    addChange(changes, "remove", path.field(fieldName), fieldPointer, field.getValue(), null);
+                } else {
+                    diff(changes, path.field(fieldName), fieldPointer, field.getValue(), afterValue);
+                }
+            }
+            fields = after.fields();
+            while (fields.hasNext()) {
+                Entry<String, JsonNode> field = fields.next();
+                if (!before.has(field.getKey())) {
+                    addChange(changes, "add", path.field(field.getKey()), pointer + "/" + escape(field.getKey()),
+                            null, field.getValue());
+                }
+            }
+        } else if (before.getNodeType() == JsonNodeType.ARRAY && after.getNodeType() == JsonNodeType.ARRAY) {
+            int common = Math.min(before.size(), after.size());
+            for (int i = 0; i < common; i++) {
+                diff(changes, path.element(), pointer + "/" + i, before.get(i), after.get(i));
+            }
+            for (int i = common; i < before.size(); i++) {
+                addChange(changes, "remove", path.element(), pointer + "/" + i, before.get(i), null);
+            }
+            for (int i = common; i < after.size(); i++) {
+                addChange(changes, "add", path.element(), pointer + "/" + i, null, after.get(i));
+            }
+        } else {
+            addChange(changes, "change", path, pointer, before, after);
+        }
+    }
+
+    private void addChange(ArrayNode changes, String op, DeploymentPath path, String pointer,
+                           JsonNode before, JsonNode after) {
+        ObjectNode change = changes.addObject();
+        change.put("op", op);
+        change.put("path", pointer);
+        change.put("api_path", apiPaths.getApiPath(resourcePath(path, before == null ? after : before)));
+        if (before != null) {
+            change.set("old", before);
+        }
+        if (after != null) {
+            change.set("new", after);
+        }
+    }
+
+    // objects outside arrays are api resources, anything else is reported against its enclosing resource
+    private DeploymentPath resourcePath(DeploymentPath path, JsonNode node) {
+        if (node.getNodeType() != JsonNodeType.OBJECT && !path.isRoot()) {
+            path = path.getParent();
+        }
+        while (path.isWithinArray()) {
+            path = path.getParent();
+        }
+        return path;
+    }
+
+    // subtree hashes are computed bottom-up once per container, object fields are combined
+    // independently of their order since the reformatted objects are keyed by name. Hashes are only
+    // ever compared between nodes at the same path, so 64 bits are plenty
+    private static long hash(JsonNode node, Map<JsonNode, Long> hashes) {
+        if (!node.isContainerNode()) {
+            return mix(hash(node.asText()) + node.getNodeType().ordinal());
+        }
+        Long cached = hashes.get(node);
+        if (cached != null) {
+            return cached;
+        }
+        long hash;
+        if (node.getNodeType() == JsonNodeType.OBJECT) {
+            hash = OBJECT_SEED;
+            Iterator<Entry<String, JsonNode>> fields = node.fields();
+            while (fields.hasNext()) {
+                Entry<String, JsonNode> field = fields.next();
+                hash += mix(hash(field.getKey()) * 31 + hash(field.getValue(), hashes));
+            }
+        } else {
+            hash = ARRAY_SEED;
+            for (JsonNode element : node) {
+                hash = hash * 31 + hash(element, hashes);
+            }
+        }
+        hash = mix(hash);
+        hashes.put(node, hash);
+        return hash;
+    }
+
+    // FNV-1a
+    static long hash(String text) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < text.length(); i++) {
+            hash ^= text.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    // murmur3 finalizer
+    static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private static String escape(String fieldName) {
+        return fieldName.replace("~", "~0").replace("/", "~1");
+    }
+}
@@ -0,0 +1,37 @@
+package com.cloudera.ps.cm.api.deployment.report;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.util.Properties;
+
+// one poll of a watched deployment at a time. The fetch gets the validators of the previous response for a
+// conditional request, and the changes are those since the last deployment read
+public class DeploymentPoller {
+
+    public interface Fetch {
+        // reads the deployment and updates the validators, returns null if the previous one is still current
+        JsonNode fetch(Properties validators) throws IOException;
+    }
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Fetch fetch;
+    private final DeploymentChangeTracker tracker;
+    private final Properties validators = new Properties();
+
+    public DeploymentPoller(Fetch fetch, DeploymentChangeTracker tracker) {
+        this.fetch = fetch;
+        this.tracker = tracker;
+    }
+
+    // no changes on the first poll, a 304 or a deployment that reads the same. A failed poll leaves the
+    // tracker at the last deployment read, so the next one diffs against that
+    public JsonNode poll() throws IOException {
+        JsonNode deployment = fetch.fetch(validators);
+        if (deployment == null) {
+            return mapper.createArrayNode();
+        }
+        return tracker.update(deployment);
+    }
+}
@@ -0,0 +1,152 @@
+package com.cloudera.ps.cm.api.deployment.report;
+
+import com.cloudera.ps.cm.api.deployment.transform.DeploymentTransformer;
+import com.cloudera.ps.cm.api.deployment.transform.ObjectNodeFieldFilter;
+import com.cloudera.ps.cm.configuration.ConfigurationReference;
+import com.cloudera.ps.cm.configuration.ConfigurationRow;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+public class NonDefaultSettingsReport implements DeploymentTransformer {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final ConfigurationReference reference;
+    private final ObjectNodeFieldFilter filter;
+    private final Map<String, ServiceParameters> serviceParameters = new HashMap<String, ServiceParameters>();
+    private Map<String, String> hostIdMap;
+
+    public NonDefaultSettingsReport(ConfigurationReference reference) {
+        this(reference, new ObjectNodeFieldFilter());
+    }
+
+    public NonDefaultSettingsReport(ConfigurationReference reference, ObjectNodeFieldFilter filter) {
+        this.reference = reference;
+        this.filter = filter;
+    }
+
+    public JsonNode transform(JsonNode input) {
+        hostIdMap = new HashMap<String, String>();
+        for (JsonNode host : input.path("hosts")) {
+            hostIdMap.put(host.path("hostId").asText(), host.path("hostname").asText());
+        }
+        ArrayNode report = mapper.createArrayNode();
+        for (JsonNode cluster : input.path("clusters")) {
+            String version = cluster.path("fullVersion").asText();
+            for (JsonNode service : cluster.path("services")) {
+                ServiceParameters parameters = getServiceParameters(version, service.path("type").asText());
+                Overrides overrides = new Overrides(report, cluster.path("name").asText(), service.path("name").asText());
+                overrides.add("service", service.path("name").asText(), null, null,
+                        service.path("config").path("items"), parameters);
+                for (JsonNode group : service.path("roleConfigGroups")) {
+                    overrides.add("roleConfigGroup", group.path("name").asText(), group.path("roleType").asText(), null,
+                            group.path("config").path("items"), parameters);
+                }
+                for (JsonNode role : service.path("roles")) {
+                    overrides.add("role", role.path("name").asText(), role.path("type").asText(),
+                            hostIdMap.get(role.path("hostRef").path("hostId").asText()),
+                            role.path("config").path("items"), parameters);
+                }
+            }
+        }
+        return report;
+    }
+
+    // the reference slice of a service is fetched once per version and service type and kept as hash maps
+    private ServiceParameters getServiceParameters(String version, String serviceType) {
+        String key = version + "/" + serviceType;
+        ServiceParameters parameters = serviceParameters.get(key);
+        if (parameters == null) {
+            try {
+                parameters = new ServiceParameters(serviceType, reference.getServiceParameters(version, serviceType));
+            } catch (SQLException e) {
+                throw new RuntimeException("Cannot read reference configuration for " + key, e);
+            }
+            if (parameters.isEmpty()) {
+                System.err.println("No reference configuration for CDH " + version + " " + serviceType);
+            }
+            serviceParameters.put(key, parameters);
+        }
+        return parameters;
+    }
+
+    private class Overrides {
+
+        private final ArrayNode report;
+        private final String cluster;
+        private final String service;
+
+        Overrides(ArrayNode report, String cluster, String service) {
+            this.report = report;
+            this.cluster = cluster;
+            this.service = service;
+        }
+
+        void add(String scope, String name, String roleType, String host, JsonNode items,
+                 ServiceParameters parameters) {
+            for (JsonNode item : items) {
+                String property = item.path("name").asText();
+                String value = item.path("value").asText();
+                ConfigurationRow row = parameters.find(roleType, property);
+                String defaultValue = row == null ? null : nullable(row.getDefaultValue());
+                if (value.equals(defaultValue)) {
+                    continue;
+                }
+                ObjectNode override = report.addObject();
+                override.put("cluster", cluster);
+                override.put("service", service);
+                override.put("scope", scope);
+                override.put("name", name);
+                if (roleType != null) {
+                    override.put("roleType", roleType);
+                }
+                if (host != null) {
+                    override.put("host", host);
+                }
+                override.put("property", property);
+                boolean sensitive = filter.isFiltered(property) || (row != null && row.isSensitive());
+                override.put("value", sensitive ? "REDACTED" : value);
+                override.put("default", defaultValue);
+                override.put("displayName", row == null ? null : row.getDisplayName());
+                override.put("units", row == null ? null : nullable(row.getUnits()));
+            }
+        }
+    }
+
+    private static String nullable(String referenceValue) {
+        // the loader stores missing reference values as the text "null"
+        return "null".equals(referenceValue) ? null : referenceValue;
+    }
+
+    // the reference lists the service-wide parameters of a service under a role group named after its type
+    private static class ServiceParameters {
+
+        private final String serviceType;
+        private final Map<String, Map<String, ConfigurationRow>> byRoleGroup;
+
+        ServiceParameters(String serviceType, Map<String, Map<String, ConfigurationRow>> byRoleGroup) {
+            this.serviceType = serviceType;
+            this.byRoleGroup = byRoleGroup;
+        }
+
+        boolean isEmpty() {
+            return byRoleGroup.isEmpty();
+        }
+
+        // service-wide parameters without a role type, role parameters missing from their role group fall back to
+        // the service-wide ones
+        ConfigurationRow find(String roleType, String apiName) {
+            ConfigurationRow row = roleType == null ? null : find(byRoleGroup.get(roleType), apiName);
+            return row == null ? find(byRoleGroup.get(serviceType), apiName) : row;
+        }
+
+        private static ConfigurationRow find(Map<String, ConfigurationRow> roleGroup, String apiName) {
+            return roleGroup == null ? null : roleGroup.get(apiName);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.cloudera.ps.cm.api.deployment.stats;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+public class RunStats {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final boolean enabled;
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private final List<Stage> stages = new ArrayList<Stage>();
+
+    public RunStats(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // the input tree is measured before the clock starts, transformers may reuse or modify it
+    public Stage start(String name, JsonNode input) {
+        Stage stage = new Stage(name);
+        if (enabled) {
+            if (input != null) {
+                stage.inputNodes = new IdentityHashMap<JsonNode, Boolean>();
+                stage.nodesIn = count(input, stage.inputNodes);
+            }
+            stages.add(stage);
+            stage.allocatedBytes = allocatedBytes();
+            stage.cpuNanos = threads.getCurrentThreadCpuTime();
+            stage.wallNanos = System.nanoTime();
+        }
+        return stage;
+    }
+
+    public void report(PrintStream out) throws JsonProcessingException {
+        if (!enabled) {
+            return;
+        }
+        Stage total = new Stage("total");
+        out.println(String.format("%-24s %10s %10s %12s %10s %10s %10s",
+                "stage", "wall ms", "cpu ms", "alloc MB", "nodes in", "nodes out", "created"));
+        for (Stage stage : stages) {
+            out.println(stage.format());
+            total.wallNanos += stage.wallNanos;
+            total.cpuNanos += stage.cpuNanos;
+            // one stage without allocation figures leaves the total without them too
+            total.allocatedBytes = total.allocatedBytes < 0 || stage.allocatedBytes < 0
+                    ? -1 : total.allocatedBytes + stage.allocatedBytes;
+            total.nodesCreated += stage.nodesCreated;
+        }
+        out.println(total.format());
+        // the same figures as a single line for metrics collection
+        ObjectNode metrics = mapper.createObjectNode();
+        metrics.put("metric", "cm_api_utils.run");
+        metrics.put("timestamp", System.currentTimeMillis());
+        ArrayNode stageMetrics = metrics.putArray("stages");
+        for (Stage stage : stages) {
+            stageMetrics.add(stage.toJson());
+        }
+        metrics.set("total", total.toJson());
+        out.println(mapper.writeValueAsString(metrics));
+    }
+
+    private long allocatedBytes() {
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    // counts all nodes, remembering the containers so the output can be checked for new ones
+    private static long count(JsonNode node, IdentityHashMap<JsonNode, Boolean> containers) {
+        long nodes = 1;
+        if (node.isContainerNode()) {
+            containers.put(node, Boolean.TRUE);
+            for (JsonNode child : node) {
+                nodes += count(child, containers);
+            }
+        }
+        return nodes;
+    }
+
+    public class Stage {
+
+        private final String name;
+        private long wallNanos;
+        private long cpuNanos;
+        private long allocatedBytes;
+        private long nodesIn;
+        private long nodesOut;
+        private long nodesCreated;
+        private IdentityHashMap<JsonNode, Boolean> inputNodes;
+
+        private Stage(String name) {
+            this.name = name;
+        }
+
+        public void stop(JsonNode output) {
+            if (!enabled) {
+                return;
+            }
+            wallNanos = System.nanoTime() - wallNanos;
+            cpuNanos = threads.getCurrentThreadCpuTime() - cpuNanos;
+            long allocated = allocatedBytes();
+            allocatedBytes = allocatedBytes < 0 || allocated < 0 ? -1 : allocated - allocatedBytes;
+            if (output != null) {
+                long[] created = new long[1];
+                nodesOut = countOutput(output, created);
+                nodesCreated = created[0];
+            }
+            inputNodes = null;
+        }
+
+        private long countOutput(JsonNode node, long[] created) {
+            long nodes = 1;
+            if (node.isContainerNode()) {
+                if (inputNodes == null || !inputNodes.containsKey(node)) {
+                    created[0]++;
+                }
+                for (JsonNode child : node) {
+                    nodes += countOutput(child, created);
+                }
+            }
+            return nodes;
+        }
+
+        private String format() {
+            String allocated = allocatedBytes < 0 ? "n/a" : String.format("%.1f", allocatedBytes / (1024.0 * 1024.0));
+            return String.format("%-24s %10.1f %10.1f %12s %10d %10d %10d", name, wallNanos / 1e6, cpuNanos / 1e6,
+                    allocated, nodesIn, nodesOut, nodesCreated);
+        }
+
+        private ObjectNode toJson() {
+            ObjectNode stage = mapper.createObjectNode();
+            stage.put("stage", name);
+            stage.put("wall_ms", wallNanos / 1e6);
+            stage.put("cpu_ms", cpuNanos / 1e6);
+            if (allocatedBytes < 0) {
+                // thread allocation is not measured on this jvm
+                stage.putNull("allocated_bytes");
+            } else {
+                stage.put("allocated_bytes", allocatedBytes);
+            }
+            stage.put("nodes_in", nodesIn);
+            stage.put("nodes_out", nodesOut);
+            stage.put("nodes_created", nodesCreated);
+            return stage;
+        }
+    }
+}
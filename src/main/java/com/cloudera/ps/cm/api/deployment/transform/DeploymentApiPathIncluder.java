@@ -8,7 +8,7 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
 import java.util.Iterator;
 import java.util.Map.Entry;
 
-public class DeploymentApiPathIncluder implements DeploymentTransformer {
+public class DeploymentApiPathIncluder implements DeploymentTransformer, DeploymentVisitor {
 
     private final ObjectMapper mapper = new ObjectMapper();
     private final String apiVersion;
@@ -35,7 +35,7 @@ public class DeploymentApiPathIncluder implements DeploymentTransformer {
             Entry<String,JsonNode> field = fields.next();
             String fieldKey = field.getKey();
             if (field.getValue().getNodeType() == JsonNodeType.OBJECT) {
-                transformed.set(fieldKey, addApiPaths((ObjectNode) field.getValue().deepCopy(), apiPath + "/" + getApiKey(fieldKey)));
+                transformed.set(fieldKey, addApiPaths((ObjectNode) field.getValue(), apiPath + "/" + getApiKey(fieldKey)));
             } else {
                 transformed.set(fieldKey, field.getValue());
             }
@@ -43,7 +43,27 @@ public class DeploymentApiPathIncluder implements DeploymentTransformer {
         return transformed;
     }
 
-    private String getApiKey(String fieldKey) {
+    public void enterObject(DeploymentPath path, ObjectNode output) {
+        if (!path.isRoot() && !path.isWithinArray()) {
+            output.put("api_path", getApiPath(path));
+        }
+    }
+
+    public boolean includeField(DeploymentPath path, String fieldName) {
+        return true;
+    }
+
+    public boolean sortFields(DeploymentPath path) {
+        return false;
+    }
+
+    public String getApiPath(DeploymentPath path) {
+        if (path.isRoot())
+            return apiRoot;
+        return getApiPath(path.getParent()) + "/" + getApiKey(path.getFieldName());
+    }
+
+    static String getApiKey(String fieldKey) {
         if ("versionInfo".equals(fieldKey))
             return "cm/version";
         if ("managerSettings".equals(fieldKey))
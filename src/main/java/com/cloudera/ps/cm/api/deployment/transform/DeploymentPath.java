@@ -0,0 +1,41 @@
+package com.cloudera.ps.cm.api.deployment.transform;
+
+public class DeploymentPath {
+
+    public static final DeploymentPath ROOT = new DeploymentPath(null, null, false);
+
+    private final DeploymentPath parent;
+    private final String fieldName;
+    private final boolean withinArray;
+
+    private DeploymentPath(DeploymentPath parent, String fieldName, boolean withinArray) {
+        this.parent = parent;
+        this.fieldName = fieldName;
+        this.withinArray = withinArray;
+    }
+
+    public DeploymentPath field(String fieldName) {
+        return new DeploymentPath(this, fieldName, withinArray);
+    }
+
+    public DeploymentPath element() {
+        return new DeploymentPath(this, null, true);
+    }
+
+    public DeploymentPath getParent() {
+        return parent;
+    }
+
+    public String getFieldName() {
+        return fieldName;
+    }
+
+    public boolean isRoot() {
+        return parent == null;
+    }
+
+    public boolean isWithinArray() {
+        return withinArray;
+    }
+
+}
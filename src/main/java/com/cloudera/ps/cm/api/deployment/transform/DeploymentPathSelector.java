@@ -0,0 +1,165 @@
+package com.cloudera.ps.cm.api.deployment.transform;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+
+// keeps the subtrees of a reformatted deployment at the given api paths, '*' matches any one path segment
+public class DeploymentPathSelector implements DeploymentTransformer, DeploymentVisitor {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Selection root;
+    // paths compare by identity, concurrent since the fields of a parallel reformat are visited by several threads
+    private final Map<DeploymentPath, Selection> selections = new ConcurrentHashMap<DeploymentPath, Selection>();
+
+    public DeploymentPathSelector(List<String> apiPaths) {
+        List<String[]> patterns = new ArrayList<String[]>();
+        for (String apiPath: apiPaths) {
+            patterns.add(parsePattern(apiPath));
+        }
+        BitSet live = new BitSet();
+        live.set(0, patterns.size());
+        Selection root = new Selection(patterns, 0, live);
+        for (String[] pattern: patterns) {
+            if (pattern.length == 0) {
+                root = Selection.ALL;
+            }
+        }
+        this.root = root;
+    }
+
+    private static String[] parsePattern(String apiPath) {
+        if (!apiPath.startsWith("/api/"))
+            throw new IllegalArgumentException("Cannot select '" + apiPath + "', expected an api path like /api/v10/cm/config");
+        List<String> segments = new ArrayList<String>();
+        for (String segment: apiPath.replaceFirst("^/api/[^/]*", "").split("/")) {
+            if (!segment.isEmpty()) {
+                segments.add(segment);
+            }
+        }
+        return segments.toArray(new String[segments.size()]);
+    }
+
+    public Selection getRoot() {
+        return root;
+    }
+
+    public JsonNode transform(JsonNode input) {
+        return select(input, root);
+    }
+
+    private JsonNode select(JsonNode node, Selection selection) {
+        if (selection.isAll()) {
+            return node;
+        }
+        switch (node.getNodeType()) {
+            case OBJECT:
+                ObjectNode selected = mapper.createObjectNode();
+                Iterator<Entry<String,JsonNode>> fields = node.fields();
+                while (fields.hasNext()) {
+                    Entry<String,JsonNode> field = fields.next();
+                    Selection fieldSelection = selection.field(field.getKey());
+                    if (fieldSelection != null) {
+                        selected.set(field.getKey(), select(field.getValue(), fieldSelection));
+                    }
+                }
+                return selected;
+            case ARRAY:
+                ArrayNode elements = mapper.createArrayNode();
+                for (JsonNode element: node) {
+                    elements.add(select(element, selection.element()));
+                }
+                return elements;
+            default:
+                return node;
+        }
+    }
+
+    public void enterObject(DeploymentPath path, ObjectNode output) {
+        if (path.isRoot()) {
+            selections.clear();
+        }
+    }
+
+    public boolean includeField(DeploymentPath path, String fieldName) {
+        return selectionAt(path).field(fieldName) != null;
+    }
+
+    public boolean sortFields(DeploymentPath path) {
+        return false;
+    }
+
+    // only paths that were included get visited, so every ancestor has a selection
+    private Selection selectionAt(DeploymentPath path) {
+        if (path.isRoot()) {
+            return root;
+        }
+        Selection selection = selections.get(path);
+        if (selection == null) {
+            Selection parent = selectionAt(path.getParent());
+            if (parent.isAll()) {
+                return parent;
+            }
+            selection = path.getFieldName() == null ? parent.element() : parent.field(path.getFieldName());
+            selections.put(path, selection);
+        }
+        return selection;
+    }
+
+    // the patterns still matching a path, or all of them once one matched completely
+    public static class Selection {
+
+        public static final Selection ALL = new Selection(null, 0, null);
+        private static final Selection NONE = new Selection(null, 0, new BitSet());
+
+        private final List<String[]> patterns;
+        private final int depth;
+        private final BitSet live;
+
+        private Selection(List<String[]> patterns, int depth, BitSet live) {
+            this.patterns = patterns;
+            this.depth = depth;
+            this.live = live;
+        }
+
+        public boolean isAll() {
+            return live == null;
+        }
+
+        // null when no pattern matches the field
+        public Selection field(String fieldName) {
+            if (live == null) {
+                return this;
+            }
+            BitSet matching = (BitSet) live.clone();
+            int segmentDepth = depth;
+            for (String segment: DeploymentApiPathIncluder.getApiKey(fieldName).split("/")) {
+                for (int i = matching.nextSetBit(0); i >= 0; i = matching.nextSetBit(i + 1)) {
+                    String[] pattern = patterns.get(i);
+                    if (!"*".equals(pattern[segmentDepth]) && !pattern[segmentDepth].equals(segment)) {
+                        matching.clear(i);
+                    } else if (pattern.length == segmentDepth + 1) {
+                        return ALL;
+                    }
+                }
+                segmentDepth++;
+            }
+            return matching.isEmpty() ? null : new Selection(patterns, segmentDepth, matching);
+        }
+
+        // array elements have no api path of their own
+        public Selection element() {
+            return live == null ? this : NONE;
+        }
+    }
+
+}
@@ -4,15 +4,22 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.JsonNodeType;
+import com.fasterxml.jackson.databind.node.NullNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.TextNode;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 public class DeploymentReformatter implements DeploymentTransformer {
 
-    private static final Map<String,String> ARRAYS_TO_CONVERT = new HashMap<String,String>(){{
+    static final Map<String,String> ARRAYS_TO_CONVERT = new HashMap<String,String>(){{
         put("roles", "name");
         put("services", "name");
         put("roleConfigGroups", "name");
@@ -22,10 +29,24 @@ public class DeploymentReformatter implements DeploymentTransformer {
     }};
 
     private final ObjectMapper mapper = new ObjectMapper();
+    private final ForkJoinPool pool;
     private Map<String, String> hostIdMap;
 
+    public DeploymentReformatter() {
+        this(null);
+    }
+
+    // with a pool, the entries of large collections like hosts and roles are reformatted in parallel
+    public DeploymentReformatter(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    ForkJoinPool getPool() {
+        return pool;
+    }
+
     public JsonNode transform(JsonNode input) {
-        hostIdMap = buildHostIdMap(input);
+        loadHostIdMap(input);
         return reformat(input);
     }
 
@@ -41,35 +62,75 @@ public class DeploymentReformatter implements DeploymentTransformer {
     }
 
     private JsonNode reformatObjectNode(ObjectNode original) {
-        ObjectNode converted = mapper.createObjectNode();
+        final ObjectNode converted = mapper.createObjectNode();
+        if (ParallelValues.isParallel(pool, original.size())) {
+            final List<String> fieldNames = new ArrayList<String>();
+            final List<JsonNode> values = new ArrayList<JsonNode>();
+            final BitSet reformatValues = new BitSet();
+            reformatFields(original, new FieldHandler() {
+                public void field(String fieldName, JsonNode value, boolean reformatValue) {
+                    reformatValues.set(values.size(), reformatValue);
+                    fieldNames.add(fieldName);
+                    values.add(value);
+                }
+            });
+            JsonNode[] reformatted = ParallelValues.transform(pool, values.size(), new ParallelValues.Transform() {
+                public JsonNode value(int index) {
+                    return reformatValues.get(index) ? reformat(values.get(index)) : values.get(index);
+                }
+            });
+            for (int i = 0; i < reformatted.length; i++) {
+                converted.set(fieldNames.get(i), reformatted[i]);
+            }
+            return converted;
+        }
+        reformatFields(original, new FieldHandler() {
+            public void field(String fieldName, JsonNode value, boolean reformatValue) {
+                converted.set(fieldName, reformatValue ? reformat(value) : value);
+            }
+        });
+        return converted;
+    }
+
+    void reformatFields(ObjectNode original, FieldHandler handler) {
         Iterator<Map.Entry<String,JsonNode>> fields = original.fields();
         while (fields.hasNext()) {
             Map.Entry<String,JsonNode> next = fields.next();
             String fieldName = next.getKey();
             if ("items".equals(fieldName)) {
-                converted.setAll(itemsToObject((ArrayNode) next.getValue()));
+                for (JsonNode item: (ArrayNode) next.getValue()) {
+                    handler.field(item.get("name").asText(), orNull(item.get("value")), false);
+                }
             } else if ("parcels".equals(fieldName)) {
-                converted.set(fieldName, parcelsToObject((ArrayNode) next.getValue()));
+                handler.field(fieldName, parcelsToObject((ArrayNode) next.getValue()), true);
             } else if ("hostRef".equals(fieldName)) {
                 // replace host id guid with actual hostname
-                converted.put("host", hostIdMap.get(next.getValue().get("hostId").asText()));
+                String host = hostIdMap.get(next.getValue().get("hostId").asText());
+                handler.field("host", host == null ? NullNode.getInstance() : TextNode.valueOf(host), false);
             } else if ("clusterRef".equals(fieldName)) {
-                converted.set("cluster", next.getValue().get("clusterName"));
+                handler.field("cluster", orNull(next.getValue().get("clusterName")), false);
             } else if ("roleConfigGroupRef".equals(fieldName)) {
-                converted.set("roleConfigGroup", next.getValue().get("roleConfigGroupName"));
+                handler.field("roleConfigGroup", orNull(next.getValue().get("roleConfigGroupName")), false);
             } else if ("serviceRef".equals(fieldName) || "base".equals(fieldName)) {
                 // ignore
             } else if (ARRAYS_TO_CONVERT.containsKey(fieldName)) {
-                converted.set(fieldName, arrayToObject(ARRAYS_TO_CONVERT.get(fieldName), (ArrayNode) next.getValue()));
+                handler.field(fieldName, arrayToObject(ARRAYS_TO_CONVERT.get(fieldName), (ArrayNode) next.getValue()), true);
             } else {
-                converted.set(fieldName, reformat(next.getValue()));
+                handler.field(fieldName, next.getValue(), true);
             }
         }
-        return converted;
     }
 
-    private JsonNode reformatArrayNode(ArrayNode original) {
+    private JsonNode reformatArrayNode(final ArrayNode original) {
         ArrayNode converted = mapper.createArrayNode();
+        if (ParallelValues.isParallel(pool, original.size())) {
+            converted.addAll(Arrays.asList(ParallelValues.transform(pool, original.size(), new ParallelValues.Transform() {
+                public JsonNode value(int index) {
+                    return reformat(original.get(index));
+                }
+            })));
+            return converted;
+        }
         for (JsonNode element: original) {
             converted.add(reformat(element));
         }
@@ -82,10 +143,10 @@ public class DeploymentReformatter implements DeploymentTransformer {
         for (JsonNode element: array) {
             if (element.getNodeType() == JsonNodeType.OBJECT) {
                 ObjectNode elementObject = (ObjectNode) element;
-                obj.set(elementObject.remove(key).asText(), elementObject.deepCopy());
+                obj.set(elementObject.remove(key).asText(), elementObject);
             }
         }
-        return reformat(obj);
+        return obj;
     }
 
     private JsonNode parcelsToObject(ArrayNode array) {
@@ -95,18 +156,18 @@ public class DeploymentReformatter implements DeploymentTransformer {
                 ObjectNode elementObject = (ObjectNode) element;
                 String product = elementObject.remove("product").asText();
                 String version = elementObject.remove("version").asText();
-                obj.set(product + "-" + version, elementObject.deepCopy());
+                obj.set(product + "-" + version, elementObject);
             }
         }
-        return reformat(obj);
+        return obj;
     }
 
-    private ObjectNode itemsToObject(ArrayNode items) {
-        ObjectNode obj = mapper.createObjectNode();
-        for (JsonNode item: items) {
-            obj.set(item.get("name").asText(), item.get("value"));
-        }
-        return obj;
+    private JsonNode orNull(JsonNode value) {
+        return value == null ? NullNode.getInstance() : value;
+    }
+
+    void loadHostIdMap(JsonNode input) {
+        hostIdMap = buildHostIdMap(input);
     }
 
     private Map<String,String> buildHostIdMap(JsonNode input) {
@@ -120,5 +181,8 @@ public class DeploymentReformatter implements DeploymentTransformer {
         return hostIdMap;
     }
 
+    interface FieldHandler {
+        void field(String fieldName, JsonNode value, boolean reformatValue);
+    }
 
 }
@@ -0,0 +1,9 @@
+package com.cloudera.ps.cm.api.deployment.transform;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+public interface DeploymentVisitor {
+    public void enterObject(DeploymentPath path, ObjectNode output);
+    public boolean includeField(DeploymentPath path, String fieldName);
+    public boolean sortFields(DeploymentPath path);
+}
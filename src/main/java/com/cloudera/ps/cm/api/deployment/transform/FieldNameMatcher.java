@@ -0,0 +1,120 @@
+package com.cloudera.ps.cm.api.deployment.transform;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+// field names and globs compiled once, so a lookup costs the same for hundreds of them as for one:
+// plain names are hashed, 'name*' and '*name' globs are walked in a prefix and a suffix trie,
+// only the remaining globs fall back to a single regex whose result is remembered per field name
+class FieldNameMatcher {
+
+    private static final int MAX_REMEMBERED = 1 << 16;
+
+    private final Set<String> names = new HashSet<String>();
+    private final Node prefixes = new Node();
+    private final Node suffixes = new Node();
+    private final Pattern others;
+    private final Map<String, Boolean> othersMatches = new ConcurrentHashMap<String, Boolean>();
+
+    FieldNameMatcher(Collection<String> patterns) {
+        StringBuilder regex = new StringBuilder();
+        for (String pattern: patterns) {
+            int firstStar = pattern.indexOf('*');
+            int lastStar = pattern.lastIndexOf('*');
+            if (firstStar < 0 && pattern.indexOf('?') < 0) {
+                names.add(pattern);
+            } else if (pattern.indexOf('?') >= 0 || firstStar != lastStar
+                    || (firstStar != 0 && firstStar != pattern.length() - 1)) {
+                regex.append(regex.length() == 0 ? "" : "|").append("(?:").append(toRegex(pattern)).append(")");
+            } else if (firstStar == pattern.length() - 1) {
+                prefixes.add(pattern.substring(0, firstStar));
+            } else {
+                suffixes.add(new StringBuilder(pattern.substring(1)).reverse());
+            }
+        }
+        others = regex.length() == 0 ? null : Pattern.compile(regex.toString());
+    }
+
+    boolean matches(String name) {
+        return names.contains(name) || matchesPrefix(name) || matchesSuffix(name)
+                || matchesOthers(name);
+    }
+
+    private boolean matchesOthers(String name) {
+        if (others == null) {
+            return false;
+        }
+        Boolean matches = othersMatches.get(name);
+        if (matches == null) {
+            matches = others.matcher(name).matches();
+            if (othersMatches.size() < MAX_REMEMBERED) {
+                othersMatches.put(name, matches);
+            }
+        }
+        return matches;
+    }
+
+    private boolean matchesPrefix(String name) {
+        Node node = prefixes;
+        for (int i = 0; !node.terminal; i++) {
+            if (i == name.length() || (node = node.children.get(name.charAt(i))) == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean matchesSuffix(String name) {
+        Node node = suffixes;
+        for (int i = name.length() - 1; !node.terminal; i--) {
+            if (i < 0 || (node = node.children.get(name.charAt(i))) == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String toRegex(String glob) {
+        StringBuilder regex = new StringBuilder();
+        int literalStart = 0;
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '*' || c == '?') {
+                if (i > literalStart) {
+                    regex.append(Pattern.quote(glob.substring(literalStart, i)));
+                }
+                regex.append(c == '*' ? ".*" : ".");
+                literalStart = i + 1;
+            }
+        }
+        if (literalStart < glob.length()) {
+            regex.append(Pattern.quote(glob.substring(literalStart)));
+        }
+        return regex.toString();
+    }
+
+    private static class Node {
+
+        private final Map<Character, Node> children = new HashMap<Character, Node>();
+        private boolean terminal;
+
+        void add(CharSequence key) {
+            Node node = this;
+            for (int i = 0; i < key.length(); i++) {
+                Node child = node.children.get(key.charAt(i));
+                if (child == null) {
+                    child = new Node();
+                    node.children.put(key.charAt(i), child);
+                }
+                node = child;
+            }
+            node.terminal = true;
+        }
+    }
+
+}
@@ -0,0 +1,149 @@
+package com.cloudera.ps.cm.api.deployment.transform;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+
+public class FusedDeploymentTransformer implements DeploymentTransformer {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final DeploymentReformatter reformatter;
+    private final List<DeploymentVisitor> visitors = new ArrayList<DeploymentVisitor>();
+    // the pool of the reformatter, if any. Visitors must then be safe to call from several threads
+    private final ForkJoinPool pool;
+
+    public FusedDeploymentTransformer(List<DeploymentTransformer> transformerChain) {
+        DeploymentReformatter reformatter = null;
+        for (DeploymentTransformer transformer: transformerChain) {
+            if (transformer instanceof DeploymentReformatter && reformatter == null && visitors.isEmpty()) {
+                reformatter = (DeploymentReformatter) transformer;
+            } else if (transformer instanceof DeploymentVisitor) {
+                visitors.add((DeploymentVisitor) transformer);
+            } else {
+                throw new IllegalArgumentException("Cannot fuse transformer " + transformer.getClass().getSimpleName());
+            }
+        }
+        this.reformatter = reformatter;
+        this.pool = reformatter == null ? null : reformatter.getPool();
+    }
+
+    public JsonNode transform(JsonNode input) {
+        if (reformatter != null) {
+            reformatter.loadHostIdMap(input);
+        }
+        return visit(input, DeploymentPath.ROOT, reformatter != null);
+    }
+
+    private JsonNode visit(JsonNode node, DeploymentPath path, boolean reformat) {
+        switch (node.getNodeType()) {
+            case OBJECT:
+                return visitObjectNode((ObjectNode) node, path, reformat);
+            case ARRAY:
+                return visitArrayNode((ArrayNode) node, path, reformat);
+            default:
+                return node;
+        }
+    }
+
+    private JsonNode visitObjectNode(ObjectNode original, final DeploymentPath path, final boolean reformat) {
+        final ObjectNode visited = mapper.createObjectNode();
+        for (DeploymentVisitor visitor: visitors) {
+            visitor.enterObject(path, visited);
+        }
+        final Map<String,JsonNode> sortedFields = sortFields(path) ? new TreeMap<String,JsonNode>() : null;
+        // in parallel the included fields are collected first and visited once all are known
+        final boolean parallel = ParallelValues.isParallel(pool, original.size());
+        final List<String> fieldNames = parallel ? new ArrayList<String>() : null;
+        final List<JsonNode> values = parallel ? new ArrayList<JsonNode>() : null;
+        final BitSet reformatValues = parallel ? new BitSet() : null;
+        DeploymentReformatter.FieldHandler handler = new DeploymentReformatter.FieldHandler() {
+            public void field(String fieldName, JsonNode value, boolean reformatValue) {
+                if (!includeField(path, fieldName)) return;
+                if (parallel) {
+                    reformatValues.set(values.size(), reformat && reformatValue);
+                    fieldNames.add(fieldName);
+                    values.add(value);
+                } else {
+                    addField(visited, sortedFields, fieldName, visitField(path, fieldName, value, reformat && reformatValue));
+                }
+            }
+        };
+        if (reformat) {
+            reformatter.reformatFields(original, handler);
+        } else {
+            Iterator<Map.Entry<String,JsonNode>> fields = original.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String,JsonNode> field = fields.next();
+                handler.field(field.getKey(), field.getValue(), false);
+            }
+        }
+        if (parallel) {
+            JsonNode[] outputs = ParallelValues.transform(pool, values.size(), new ParallelValues.Transform() {
+                public JsonNode value(int index) {
+                    return visitField(path, fieldNames.get(index), values.get(index), reformatValues.get(index));
+                }
+            });
+            for (int i = 0; i < outputs.length; i++) {
+                addField(visited, sortedFields, fieldNames.get(i), outputs[i]);
+            }
+        }
+        if (sortedFields != null) {
+            visited.setAll(sortedFields);
+        }
+        return visited;
+    }
+
+    private JsonNode visitField(DeploymentPath path, String fieldName, JsonNode value, boolean reformat) {
+        return value.isContainerNode() ? visit(value, path.field(fieldName), reformat) : value;
+    }
+
+    private static void addField(ObjectNode visited, Map<String,JsonNode> sortedFields, String fieldName, JsonNode output) {
+        if (sortedFields != null) {
+            sortedFields.put(fieldName, output);
+        } else {
+            visited.set(fieldName, output);
+        }
+    }
+
+    private JsonNode visitArrayNode(final ArrayNode original, DeploymentPath path, final boolean reformat) {
+        ArrayNode visited = mapper.createArrayNode();
+        final DeploymentPath elementPath = path.element();
+        if (ParallelValues.isParallel(pool, original.size())) {
+            visited.addAll(Arrays.asList(ParallelValues.transform(pool, original.size(), new ParallelValues.Transform() {
+                public JsonNode value(int index) {
+                    return visit(original.get(index), elementPath, reformat);
+                }
+            })));
+            return visited;
+        }
+        for (JsonNode element: original) {
+            visited.add(visit(element, elementPath, reformat));
+        }
+        return visited;
+    }
+
+    private boolean includeField(DeploymentPath path, String fieldName) {
+        for (DeploymentVisitor visitor: visitors) {
+            if (!visitor.includeField(path, fieldName)) return false;
+        }
+        return true;
+    }
+
+    private boolean sortFields(DeploymentPath path) {
+        for (DeploymentVisitor visitor: visitors) {
+            if (visitor.sortFields(path)) return true;
+        }
+        return false;
+    }
+
+}
@@ -1,42 +1,70 @@
 package com.cloudera.ps.cm.api.deployment.transform;
 
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.JsonNodeType;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.Set;
 
-public class ObjectNodeFieldFilter implements DeploymentTransformer {
+public class ObjectNodeFieldFilter implements DeploymentTransformer, DeploymentVisitor {
 
-    private final ObjectMapper mapper = new ObjectMapper();
+    public static final Set<String> FILTERED_FIELDS = Collections.singleton("role_jceks_password");
 
+    private final FieldNameMatcher filtered;
+
+    public ObjectNodeFieldFilter() {
+        this(FILTERED_FIELDS);
+    }
+
+    // field names or globs with '*' and '?', e.g. the sensitive parameters of a configuration reference
+    public ObjectNodeFieldFilter(Collection<String> filteredFields) {
+        this.filtered = new FieldNameMatcher(filteredFields);
+    }
+
+    public boolean isFiltered(String fieldName) {
+        return filtered.matches(fieldName);
+    }
+
+    // fields are removed from the input tree in place instead of copying it
     public JsonNode transform(JsonNode input) {
-        if (input.getNodeType() == JsonNodeType.OBJECT)
-            return filterObjectNode((ObjectNode) input);
-        if (input.getNodeType() == JsonNodeType.ARRAY)
-            return filterArrayNode((ArrayNode) input);
+        filter(input);
         return input;
     }
 
-    private JsonNode filterObjectNode(ObjectNode original) {
-        ObjectNode filtered = mapper.createObjectNode();
-        Iterator<String> fieldNames = original.fieldNames();
-        while (fieldNames.hasNext()) {
-            String fieldName = fieldNames.next();
-            if ("role_jceks_password".equals(fieldName)) continue;
-            filtered.set(fieldName, transform(original.get(fieldName).deepCopy()));
+    private void filter(JsonNode node) {
+        if (node.getNodeType() == JsonNodeType.OBJECT) {
+            Iterator<Entry<String,JsonNode>> fields = node.fields();
+            while (fields.hasNext()) {
+                Entry<String,JsonNode> field = fields.next();
+                if (isFiltered(field.getKey())) {
+                    fields.remove();
+                } else if (field.getValue().isContainerNode()) {
+                    filter(field.getValue());
+                }
+            }
+        } else if (node.getNodeType() == JsonNodeType.ARRAY) {
+            for (JsonNode element: node) {
+                if (element.isContainerNode()) {
+                    filter(element);
+                }
+            }
         }
-        return filtered;
     }
 
-    private JsonNode filterArrayNode(ArrayNode original) {
-        ArrayNode converted = mapper.createArrayNode();
-        for (JsonNode element: original) {
-            converted.add(transform(element.deepCopy()));
-        }
-        return converted;
+    public void enterObject(DeploymentPath path, ObjectNode output) {
+        // filtering needs no extra fields
+    }
+
+    public boolean includeField(DeploymentPath path, String fieldName) {
+        return !isFiltered(fieldName);
+    }
+
+    public boolean sortFields(DeploymentPath path) {
+        return false;
     }
 
 }
@@ -10,7 +10,7 @@ import java.util.Iterator;
 import java.util.Set;
 import java.util.TreeSet;
 
-public class ObjectNodeFieldSorter implements DeploymentTransformer {
+public class ObjectNodeFieldSorter implements DeploymentTransformer, DeploymentVisitor {
 
     private final ObjectMapper mapper = new ObjectMapper();
 
@@ -30,7 +30,7 @@ public class ObjectNodeFieldSorter implements DeploymentTransformer {
         }
         ObjectNode sorted = mapper.createObjectNode();
         for (String fieldName: sortedFieldNames) {
-            sorted.set(fieldName, transform(original.get(fieldName).deepCopy()));
+            sorted.set(fieldName, transform(original.get(fieldName)));
         }
         return sorted;
     }
@@ -38,9 +38,21 @@ public class ObjectNodeFieldSorter implements DeploymentTransformer {
     private JsonNode sortArrayNode(ArrayNode original) {
         ArrayNode converted = mapper.createArrayNode();
         for (JsonNode element: original) {
-            converted.add(transform(element.deepCopy()));
+            converted.add(transform(element));
         }
         return converted;
     }
 
+    public void enterObject(DeploymentPath path, ObjectNode output) {
+        // sorting needs no extra fields
+    }
+
+    public boolean includeField(DeploymentPath path, String fieldName) {
+        return true;
+    }
+
+    public boolean sortFields(DeploymentPath path) {
+        return true;
+    }
+
 }
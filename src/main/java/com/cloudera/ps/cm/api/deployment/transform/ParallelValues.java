@@ -0,0 +1,63 @@
+package com.cloudera.ps.cm.api.deployment.transform;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+// transforms the values of a large object or array on a fork/join pool, halving their range until it is
+// small enough for one thread. Each result is stored at the index of its value, so the caller can add them
+// to the output in the order of the serial path. Tasks only live within one transform and are never serialized
+@SuppressWarnings("serial")
+class ParallelValues extends RecursiveAction {
+
+    // objects and arrays with fewer values, e.g. the roles of a gateway or the clusters, are transformed on
+    // the calling thread, the values within them may still be large enough to split
+    static final int PARALLEL_THRESHOLD = 32;
+    private static final int SEQUENTIAL_RANGE = PARALLEL_THRESHOLD / 2;
+
+    interface Transform {
+        JsonNode value(int index);
+    }
+
+    private final Transform transform;
+    private final JsonNode[] results;
+    private final int from;
+    private final int to;
+
+    private ParallelValues(Transform transform, JsonNode[] results, int from, int to) {
+        this.transform = transform;
+        this.results = results;
+        this.from = from;
+        this.to = to;
+    }
+
+    static boolean isParallel(ForkJoinPool pool, int size) {
+        return pool != null && size >= PARALLEL_THRESHOLD;
+    }
+
+    static JsonNode[] transform(ForkJoinPool pool, int size, Transform transform) {
+        JsonNode[] results = new JsonNode[size];
+        ParallelValues task = new ParallelValues(transform, results, 0, size);
+        // nested objects are split by the worker that reached them, instead of queueing on the pool again
+        if (ForkJoinTask.inForkJoinPool()) {
+            task.invoke();
+        } else {
+            pool.invoke(task);
+        }
+        return results;
+    }
+
+    protected void compute() {
+        if (to - from <= SEQUENTIAL_RANGE) {
+            for (int i = from; i < to; i++) {
+                results[i] = transform.value(i);
+            }
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        invokeAll(new ParallelValues(transform, results, from, middle),
+                new ParallelValues(transform, results, middle, to));
+    }
+}
@@ -0,0 +1,328 @@
+package com.cloudera.ps.cm.api.deployment.transform;
+
+import com.cloudera.ps.cm.api.deployment.format.DeploymentFormats;
+import com.cloudera.ps.cm.api.deployment.transform.DeploymentPathSelector.Selection;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.JsonNodeType;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+public class StreamingDeploymentReformatter {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final DeploymentFormats formats = new DeploymentFormats();
+    // null detects json, smile or cbor from the file
+    private final JsonFactory factory;
+    private final Selection selection;
+    private final ObjectNodeFieldFilter filter;
+    private Map<String, String> hostIdMap;
+
+    public StreamingDeploymentReformatter() {
+        this(null, null, new ObjectNodeFieldFilter());
+    }
+
+    public StreamingDeploymentReformatter(JsonFactory factory) {
+        this(factory, null, new ObjectNodeFieldFilter());
+    }
+
+    // everything outside the selected api paths and every filtered field is skipped by the parser
+    // instead of being reformatted
+    public StreamingDeploymentReformatter(JsonFactory factory, DeploymentPathSelector selector,
+                                          ObjectNodeFieldFilter filter) {
+        this.factory = factory;
+        this.selection = selector == null ? Selection.ALL : selector.getRoot();
+        this.filter = filter;
+    }
+
+    public void reformat(File input, JsonGenerator generator) throws IOException {
+        // hosts come after clusters in cm/deployment, so resolve host ids in a first pass,
+        // host refs only occur in the roles of cluster and management services
+        JsonParser parser;
+        if (selection.field("clusters") != null || selection.field("managementService") != null) {
+            parser = createParser(input);
+            try {
+                hostIdMap = buildHostIdMap(parser);
+            } finally {
+                parser.close();
+            }
+        } else {
+            hostIdMap = Collections.emptyMap();
+        }
+        parser = createParser(input);
+        try {
+            reformat(parser, generator, hostIdMap);
+        } finally {
+            parser.close();
+        }
+        generator.flush();
+    }
+
+    private JsonParser createParser(File input) throws IOException {
+        return factory == null ? formats.createParser(input) : factory.createParser(input);
+    }
+
+    public void reformat(JsonParser parser, JsonGenerator generator, Map<String, String> hostIdMap) throws IOException {
+        this.hostIdMap = hostIdMap;
+        if (parser.getCurrentToken() == null && parser.nextToken() == null) {
+            return;
+        }
+        reformatValue(parser, generator, selection);
+    }
+
+    public Map<String, String> buildHostIdMap(JsonParser parser) throws IOException {
+        Map<String, String> hostIdMap = new HashMap<String, String>();
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            return hostIdMap;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.getCurrentName();
+            if (parser.nextToken() == JsonToken.START_ARRAY && "hosts".equals(fieldName)) {
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    if (parser.getCurrentToken() == JsonToken.START_OBJECT) {
+                        readHostId(parser, hostIdMap);
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return hostIdMap;
+    }
+
+    private void readHostId(JsonParser parser, Map<String, String> hostIdMap) throws IOException {
+        String hostId = null;
+        String hostname = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.getCurrentName();
+            parser.nextToken();
+            if ("hostId".equals(fieldName)) {
+                hostId = parser.getValueAsString();
+            } else if ("hostname".equals(fieldName)) {
+                hostname = parser.getValueAsString();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        if (hostId != null) {
+            hostIdMap.put(hostId, hostname);
+        }
+    }
+
+    private void reformatValue(JsonParser parser, JsonGenerator generator, Selection selection) throws IOException {
+        switch (parser.getCurrentToken()) {
+            case START_OBJECT:
+                generator.writeStartObject();
+                reformatFields(parser, generator, selection);
+                generator.writeEndObject();
+                break;
+            case START_ARRAY:
+                generator.writeStartArray();
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    reformatValue(parser, generator, selection.element());
+                }
+                generator.writeEndArray();
+                break;
+            default:
+                generator.copyCurrentEvent(parser);
+        }
+    }
+
+    private void reformatFields(JsonParser parser, JsonGenerator generator, Selection selection) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.getCurrentName();
+            parser.nextToken();
+            reformatField(fieldName, parser, generator, selection);
+        }
+    }
+
+    // selection is the one of the object holding the field, the field is selected and filtered by its reformatted
+    // name as in the tree path. The items array itself has no name in the output, its items are filtered by theirs
+    private void reformatField(String fieldName, JsonParser parser, JsonGenerator generator, Selection selection) throws IOException {
+        JsonToken token = parser.getCurrentToken();
+        if ("items".equals(fieldName) && token == JsonToken.START_ARRAY) {
+            itemsToFields(parser, generator, selection);
+        } else if (filter.isFiltered(reformattedName(fieldName))) {
+            parser.skipChildren();
+        } else if ("parcels".equals(fieldName) && token == JsonToken.START_ARRAY) {
+            Selection parcelsSelection = selection.field(fieldName);
+            if (parcelsSelection == null) {
+                parser.skipChildren();
+                return;
+            }
+            generator.writeFieldName(fieldName);
+            parcelsToObject(parser, generator, parcelsSelection);
+        } else if ("hostRef".equals(fieldName)) {
+            if (selection.field("host") == null) {
+                parser.skipChildren();
+                return;
+            }
+            // replace host id guid with actual hostname
+            JsonNode ref = mapper.readTree(parser);
+            generator.writeFieldName("host");
+            writeText(generator, hostIdMap.get(ref.path("hostId").asText()));
+        } else if ("clusterRef".equals(fieldName)) {
+            if (selection.field("cluster") == null) {
+                parser.skipChildren();
+                return;
+            }
+            JsonNode ref = mapper.readTree(parser);
+            generator.writeFieldName("cluster");
+            writeNode(generator, ref.get("clusterName"));
+        } else if ("roleConfigGroupRef".equals(fieldName)) {
+            if (selection.field("roleConfigGroup") == null) {
+                parser.skipChildren();
+                return;
+            }
+            JsonNode ref = mapper.readTree(parser);
+            generator.writeFieldName("roleConfigGroup");
+            writeNode(generator, ref.get("roleConfigGroupName"));
+        } else if ("serviceRef".equals(fieldName) || "base".equals(fieldName)) {
+            // ignore
+            parser.skipChildren();
+        } else if (selection.field(fieldName) == null) {
+            parser.skipChildren();
+        } else if (DeploymentReformatter.ARRAYS_TO_CONVERT.containsKey(fieldName) && token == JsonToken.START_ARRAY) {
+            generator.writeFieldName(fieldName);
+            arrayToObject(DeploymentReformatter.ARRAYS_TO_CONVERT.get(fieldName), parser, generator, selection.field(fieldName));
+        } else {
+            generator.writeFieldName(fieldName);
+            reformatValue(parser, generator, selection.field(fieldName));
+        }
+    }
+
+    private static String reformattedName(String fieldName) {
+        if ("hostRef".equals(fieldName)) {
+            return "host";
+        } else if ("clusterRef".equals(fieldName)) {
+            return "cluster";
+        } else if ("roleConfigGroupRef".equals(fieldName)) {
+            return "roleConfigGroup";
+        }
+        return fieldName;
+    }
+
+    private void arrayToObject(String key, JsonParser parser, JsonGenerator generator, Selection selection) throws IOException {
+        generator.writeStartObject();
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (parser.getCurrentToken() != JsonToken.START_OBJECT) {
+                parser.skipChildren();
+                continue;
+            }
+            // fields ahead of the key are held back until the key is known, usually there are none
+            TokenBuffer pending = null;
+            String name = null;
+            Selection elementSelection = null;
+            boolean skipped = false;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String fieldName = parser.getCurrentName();
+                parser.nextToken();
+                if (name == null && key.equals(fieldName)) {
+                    name = parser.getText();
+                    elementSelection = selection.field(name);
+                    skipped = filter.isFiltered(name) || elementSelection == null;
+                    if (!skipped) {
+                        generator.writeFieldName(name);
+                        generator.writeStartObject();
+                        if (pending != null) {
+                            pending.writeEndObject();
+                            replayFields(pending, generator, elementSelection);
+                        }
+                    }
+                    pending = null;
+                } else if (name == null) {
+                    if (pending == null) {
+                        pending = new TokenBuffer(parser);
+                        pending.writeStartObject();
+                    }
+                    pending.writeFieldName(fieldName);
+                    pending.copyCurrentStructure(parser);
+                } else if (skipped) {
+                    parser.skipChildren();
+                } else {
+                    reformatField(fieldName, parser, generator, elementSelection);
+                }
+            }
+            if (name != null && !skipped) {
+                generator.writeEndObject();
+            }
+        }
+        generator.writeEndObject();
+    }
+
+    private void replayFields(TokenBuffer buffer, JsonGenerator generator, Selection selection) throws IOException {
+        JsonParser replay = buffer.asParser();
+        try {
+            replay.nextToken();
+            reformatFields(replay, generator, selection);
+        } finally {
+            replay.close();
+        }
+    }
+
+    private void parcelsToObject(JsonParser parser, JsonGenerator generator, Selection selection) throws IOException {
+        generator.writeStartObject();
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            JsonNode element = mapper.readTree(parser);
+            if (element.getNodeType() == JsonNodeType.OBJECT) {
+                ObjectNode elementObject = (ObjectNode) element;
+                String product = elementObject.remove("product").asText();
+                String version = elementObject.remove("version").asText();
+                Selection parcelSelection = selection.field(product + "-" + version);
+                if (parcelSelection == null || filter.isFiltered(product + "-" + version)) {
+                    continue;
+                }
+                generator.writeFieldName(product + "-" + version);
+                JsonParser replay = mapper.treeAsTokens(elementObject);
+                try {
+                    replay.nextToken();
+                    reformatValue(replay, generator, parcelSelection);
+                } finally {
+                    replay.close();
+                }
+            }
+        }
+        generator.writeEndObject();
+    }
+
+    private void itemsToFields(JsonParser parser, JsonGenerator generator, Selection selection) throws IOException {
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            JsonNode item = mapper.readTree(parser);
+            String name = item.get("name").asText();
+            if (filter.isFiltered(name) || selection.field(name) == null) {
+                continue;
+            }
+            generator.writeFieldName(name);
+            writeNode(generator, item.get("value"));
+        }
+    }
+
+    private void writeText(JsonGenerator generator, String text) throws IOException {
+        if (text == null) {
+            generator.writeNull();
+        } else {
+            generator.writeString(text);
+        }
+    }
+
+    private void writeNode(JsonGenerator generator, JsonNode node) throws IOException {
+        if (node == null) {
+            generator.writeNull();
+        } else {
+            mapper.writeTree(generator, node);
+        }
+    }
+
+}
@@ -0,0 +1,165 @@
+package com.cloudera.ps.cm.api.server;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+// runs requests on a warm jvm: the query string holds the options, the body the deployment
+public class DeploymentServer {
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    public interface Handler {
+        // a RuntimeException or unreadable input before any output is answered as a bad request
+        void handle(List<String[]> parameters, InputStream body, Headers responseHeaders, OutputStream out)
+                throws IOException;
+    }
+
+    public DeploymentServer(InetSocketAddress address, int threads, final Handler handler) throws IOException {
+        // headers and chunks go out as separate writes, with nagle each small response waits for a delayed ack
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        this.server = HttpServer.create(address, 0);
+        this.executor = Executors.newFixedThreadPool(threads);
+        server.setExecutor(executor);
+        server.createContext("/", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    respond(exchange, handler);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() throws InterruptedException {
+        server.stop(0);
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void respond(HttpExchange exchange, Handler handler) throws IOException {
+        ResponseStream out = new ResponseStream(exchange);
+        try {
+            handler.handle(parseQuery(exchange.getRequestURI().getRawQuery()), openBody(exchange),
+                    exchange.getResponseHeaders(), out);
+            out.close();
+        } catch (RuntimeException e) {
+            fail(exchange, out, 400, e);
+        } catch (JsonProcessingException e) {
+            fail(exchange, out, 400, e);
+        } catch (IOException e) {
+            fail(exchange, out, 500, e);
+        }
+    }
+
+    private void fail(HttpExchange exchange, ResponseStream out, int status, Exception e) throws IOException {
+        if (out.isCommitted()) {
+            // the status has been sent with the first output already, all that is left is to log it
+            System.err.println("Request " + exchange.getRequestURI() + " failed after sending output: " + e);
+            return;
+        }
+        byte[] message = (e.getMessage() + "\n").getBytes("UTF-8");
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, message.length);
+        exchange.getResponseBody().write(message);
+    }
+
+    private InputStream openBody(HttpExchange exchange) throws IOException {
+        Headers headers = exchange.getRequestHeaders();
+        if (!"chunked".equalsIgnoreCase(headers.getFirst("Transfer-Encoding"))
+                && (headers.getFirst("Content-Length") == null || "0".equals(headers.getFirst("Content-Length")))) {
+            return null;
+        }
+        InputStream body = exchange.getRequestBody();
+        if ("gzip".equalsIgnoreCase(headers.getFirst("Content-Encoding"))) {
+            body = new GZIPInputStream(body);
+        }
+        return body;
+    }
+
+    private static List<String[]> parseQuery(String query) throws IOException {
+        List<String[]> parameters = new ArrayList<String[]>();
+        if (query == null) {
+            return parameters;
+        }
+        for (String parameter: query.split("&")) {
+            if (parameter.isEmpty()) {
+                continue;
+            }
+            int separator = parameter.indexOf('=');
+            if (separator < 0) {
+                parameters.add(new String[]{URLDecoder.decode(parameter, "UTF-8"), null});
+            } else {
+                parameters.add(new String[]{URLDecoder.decode(parameter.substring(0, separator), "UTF-8"),
+                        URLDecoder.decode(parameter.substring(separator + 1), "UTF-8")});
+            }
+        }
+        return parameters;
+    }
+
+    // sends the status with the first byte, so errors before any output still get their own status
+    private static class ResponseStream extends OutputStream {
+
+        private final HttpExchange exchange;
+        private OutputStream body;
+
+        ResponseStream(HttpExchange exchange) {
+            this.exchange = exchange;
+        }
+
+        boolean isCommitted() {
+            return body != null;
+        }
+
+        private OutputStream body() throws IOException {
+            if (body == null) {
+                exchange.sendResponseHeaders(200, 0);
+                body = exchange.getResponseBody();
+            }
+            return body;
+        }
+
+        public void write(int b) throws IOException {
+            body().write(b);
+        }
+
+        public void write(byte[] b, int off, int len) throws IOException {
+            body().write(b, off, len);
+        }
+
+        public void flush() throws IOException {
+            if (body != null) {
+                body.flush();
+            }
+        }
+
+        public void close() throws IOException {
+            body().close();
+        }
+    }
+
+}
@@ -1,19 +1,46 @@
 package com.cloudera.ps.cm.configuration;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import org.apache.commons.cli.*;
 import org.apache.commons.dbutils.DbUtils;
-import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.output.NullOutputStream;
 
 import java.io.File;
 import java.io.IOException;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
 
 public class ConfigurationDatabaseLoader {
 
+    private static final int DEFAULT_BATCH_SIZE = 10000;
+
     private Connection conn;
     private PreparedStatement ps;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private int threads = 1;
+    private boolean incremental;
+    private boolean normalized;
+    private File snapshot;
+    private NormalizedConfigurationWriter normalizedWriter;
+    private ParallelLoad parallelLoad;
+    private List<ConfigurationBlock> scannedBlocks;
+    private Iterator<ConfigurationBlock> plannedBlocks;
+    private int pendingRows;
+    private long loadedRows;
+    private int previousCacheSize;
 
     private final ObjectMapper mapper = new ObjectMapper();
 
@@ -30,6 +57,21 @@ public class ConfigurationDatabaseLoader {
 
     public void createTable() throws SQLException {
         Statement stmt = conn.createStatement();
+        ResultSet rs = stmt.executeQuery("SELECT type FROM sqlite_master WHERE name = 'configuration'");
+        String existingType = rs.next() ? rs.getString(1) : null;
+        DbUtils.close(rs);
+        if (existingType != null && !existingType.equals(normalized ? "view" : "table")) {
+            DbUtils.close(stmt);
+            throw new IllegalStateException("configuration.db already holds the " +
+                    ("view".equals(existingType) ? "normalized" : "flat") + " configuration layout");
+        }
+        if (normalized) {
+            DbUtils.close(stmt);
+            normalizedWriter = new NormalizedConfigurationWriter(conn);
+            normalizedWriter.createSchema();
+            createBlocksTable();
+            return;
+        }
         String createTableSql = "CREATE TABLE IF NOT EXISTS configuration\n" +
                 "(\n" +
                 "    product TEXT,\n" +
@@ -47,96 +89,612 @@ public class ConfigurationDatabaseLoader {
                 "    sensitive INTEGER\n" +
                 ");\n";
         stmt.execute(createTableSql);
+        DbUtils.close(stmt);
+        createBlocksTable();
+    }
+
+    private void createBlocksTable() throws SQLException {
+        Statement stmt = conn.createStatement();
+        stmt.execute("CREATE TABLE IF NOT EXISTS configuration_blocks\n" +
+                "(\n" +
+                "    product TEXT NOT NULL,\n" +
+                "    version TEXT NOT NULL,\n" +
+                "    content_hash TEXT NOT NULL,\n" +
+                "    PRIMARY KEY (product, version)\n" +
+                ");\n");
+        DbUtils.close(stmt);
+    }
+
+    // a full load appends to the rows of an incremental one and leaves its block hashes stale
+    private void checkNotIncrementallyLoaded() throws SQLException {
+        Statement stmt = conn.createStatement();
+        ResultSet rs = stmt.executeQuery("SELECT 1 FROM configuration_blocks LIMIT 1");
+        boolean loaded = rs.next();
+        DbUtils.close(rs);
+        DbUtils.close(stmt);
+        if (loaded) {
+            throw new IllegalStateException("configuration.db was written by an incremental load, " +
+                    "load it with --incremental or into a new database");
+        }
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    public void setNormalized(boolean normalized) {
+        this.normalized = normalized;
+    }
+
+    public void setSnapshot(File snapshot) {
+        this.snapshot = snapshot;
     }
 
     public void run() throws IOException, SQLException {
         createTable();
-        ps = conn.prepareStatement("INSERT INTO configuration (product, version, service, " +
-                "role_group, category, api_name, display_name, related_name, description, default_value, units, " +
-                "required, sensitive) VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?)");
-
-        JsonNode config = mapper.readValue(FileUtils.readFileToString(new File("configurationReference.json")), JsonNode.class);
-        Iterator keys = config.fieldNames();
-        while (keys.hasNext()) {
-            String key = keys.next().toString();
-            if (key.startsWith("CDH")) {
-                insertConfigurationForCDH(config.get(key));
-            } else if (key.startsWith("Host")) {
-                insertConfigurationForHosts(config.get(key));
-            } else if (key.startsWith("Cloudera Manager")) {
-                insertConfigurationForClouderaManager(config.get(key));
-            } else if (key.startsWith("Cloudera Management")) {
-                insertConfigurationForClouderaManagementServices(config.get(key));
+        if (!incremental) {
+            checkNotIncrementallyLoaded();
+        }
+        long start = System.nanoTime();
+        beginBulkLoad();
+        try {
+            if (incremental) {
+                planIncrementalLoad();
+            }
+            if (normalizedWriter != null) {
+                normalizedWriter.open();
+            } else {
+                ps = conn.prepareStatement("INSERT INTO configuration (product, version, service, " +
+                        "role_group, category, api_name, display_name, related_name, description, default_value, " +
+                        "units, required, sensitive) VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?)");
+            }
+            if (threads > 1) {
+                parallelLoad = new ParallelLoad(threads);
+            }
+            try {
+                readReference();
+                if (parallelLoad != null) {
+                    parallelLoad.finish();
+                }
+            } finally {
+                if (parallelLoad != null) {
+                    parallelLoad.shutdown();
+                    parallelLoad = null;
+                }
+                plannedBlocks = null;
+            }
+            endBulkLoad();
+        } finally {
+            rollbackUnlessEnded();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(String.format("Loaded %d rows in %.1fs (%.0f rows/sec)",
+                loadedRows, seconds, loadedRows / seconds));
+        if (snapshot != null) {
+            new ConfigurationSnapshotWriter().write(conn, snapshot);
+            System.out.println("Wrote snapshot " + snapshot);
+        }
+    }
+
+    private void readReference() throws IOException {
+        JsonParser parser = mapper.getFactory().createParser(new File("configurationReference.json"));
+        try {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Expected a JSON object in configurationReference.json");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String key = parser.getCurrentName();
+                parser.nextToken();
+                if (key.startsWith("CDH")) {
+                    insertConfigurationForCDH(parser);
+                } else if (key.startsWith("Host")) {
+                    insertConfigurationForHosts(parser);
+                } else if (key.startsWith("Cloudera Manager")) {
+                    insertConfigurationForClouderaManager(parser);
+                } else if (key.startsWith("Cloudera Management")) {
+                    insertConfigurationForClouderaManagementServices(parser);
+                } else {
+                    if (scannedBlocks == null) {
+                        System.err.println("Unknown key: " + key);
+                    }
+                    parser.skipChildren();
+                }
+            }
+        } finally {
+            parser.close();
+        }
+    }
+
+    // hashes every block in a first pass, then removes the rows of blocks whose hash changed so
+    // that only those are loaded by the second pass, and the rows of blocks no longer in the reference,
+    // so the result matches a fresh load; everything happens in one transaction
+    private void planIncrementalLoad() throws IOException, SQLException {
+        Map<String, String> storedHashes = new HashMap<String, String>();
+        Map<String, String[]> removedBlocks = new HashMap<String, String[]>();
+        Statement stmt = conn.createStatement();
+        ResultSet rs = stmt.executeQuery("SELECT product, version, content_hash FROM configuration_blocks");
+        while (rs.next()) {
+            String key = rs.getString(1) + "/" + rs.getString(2);
+            storedHashes.put(key, rs.getString(3));
+            removedBlocks.put(key, new String[]{rs.getString(1), rs.getString(2)});
+        }
+        DbUtils.close(rs);
+        DbUtils.close(stmt);
+
+        List<ConfigurationBlock> blocks = new ArrayList<ConfigurationBlock>();
+        scannedBlocks = blocks;
+        try {
+            readReference();
+        } finally {
+            scannedBlocks = null;
+        }
+
+        PreparedStatement delete = normalizedWriter != null ? null
+                : conn.prepareStatement("DELETE FROM configuration WHERE product = ? AND version IS ?");
+        PreparedStatement update = conn.prepareStatement("INSERT OR REPLACE INTO configuration_blocks " +
+                "(product, version, content_hash) VALUES (?,?,?)");
+        PreparedStatement remove = conn.prepareStatement("DELETE FROM configuration_blocks " +
+                "WHERE product = ? AND version = ?");
+        int changedBlocks = 0;
+        for (ConfigurationBlock block : blocks) {
+            String version = block.version == null ? "" : block.version;
+            removedBlocks.remove(block.product + "/" + version);
+            block.changed = !block.hash.equals(storedHashes.get(block.product + "/" + version));
+            if (block.changed) {
+                deleteBlockRows(delete, block.product, block.version);
+                update.setString(1, block.product);
+                update.setString(2, version);
+                update.setString(3, block.hash);
+                update.executeUpdate();
+                changedBlocks++;
+            }
+        }
+        for (String[] block : removedBlocks.values()) {
+            // blocks without a version are stored with an empty one, their rows have none
+            deleteBlockRows(delete, block[0], block[1].isEmpty() ? null : block[1]);
+            remove.setString(1, block[0]);
+            remove.setString(2, block[1]);
+            remove.executeUpdate();
+        }
+        DbUtils.close(delete);
+        DbUtils.close(update);
+        DbUtils.close(remove);
+        plannedBlocks = blocks.iterator();
+        System.out.println(String.format("%d of %d reference blocks changed, %d removed",
+                changedBlocks, blocks.size(), removedBlocks.size()));
+    }
+
+    private void deleteBlockRows(PreparedStatement delete, String product, String version) throws SQLException {
+        if (delete != null) {
+            delete.setString(1, product);
+            delete.setString(2, version);
+            delete.executeUpdate();
+        } else {
+            normalizedWriter.delete(product, version);
+        }
+    }
+
+    private ConfigurationBlock hashBlock(JsonParser parser, String product, Section section) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        JsonGenerator generator = mapper.getFactory().createGenerator(
+                new DigestOutputStream(NullOutputStream.NULL_OUTPUT_STREAM, digest));
+        String version = null;
+        boolean versionValue = false;
+        int depth = 0;
+        do {
+            JsonToken token = parser.getCurrentToken();
+            generator.copyCurrentEvent(parser);
+            if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+                depth++;
+                versionValue = false;
+            } else if (token == JsonToken.END_OBJECT || token == JsonToken.END_ARRAY) {
+                depth--;
+            } else if (token == JsonToken.FIELD_NAME) {
+                versionValue = depth == 1 && section == Section.VERSION && "version".equals(parser.getCurrentName());
+            } else if (versionValue) {
+                version = versionString(parser.getText());
+                versionValue = false;
+            }
+        } while (depth > 0 && parser.nextToken() != null);
+        generator.close();
+        StringBuilder hash = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hash.append(String.format("%02x", b));
+        }
+        return new ConfigurationBlock(product, version, hash.toString());
+    }
+
+    private void beginBulkLoad() throws SQLException {
+        Statement stmt = conn.createStatement();
+        if (!incremental && normalizedWriter != null) {
+            normalizedWriter.dropIndexes();
+        } else if (!incremental) {
+            // rebuilding the index once at the end is much cheaper than maintaining it per row,
+            // incremental loads keep it for deleting the rows of changed blocks
+            stmt.execute("DROP INDEX IF EXISTS configuration_lookup");
+            stmt.execute("DROP INDEX IF EXISTS configuration_description_lookup");
+        }
+        ResultSet rs = stmt.executeQuery("PRAGMA cache_size");
+        previousCacheSize = rs.getInt(1);
+        DbUtils.close(rs);
+        stmt.execute("PRAGMA journal_mode = MEMORY");
+        stmt.execute("PRAGMA synchronous = OFF");
+        stmt.execute("PRAGMA cache_size = -65536");
+        DbUtils.close(stmt);
+        conn.setAutoCommit(false);
+        pendingRows = 0;
+        loadedRows = 0;
+    }
+
+    private void endBulkLoad() throws SQLException {
+        flushBatch();
+        rebuildSearchIndex();
+        conn.commit();
+        finishBulkLoad();
+    }
+
+    // a load is one transaction, so a failed one leaves the database and the connection as they were before
+    private void rollbackUnlessEnded() throws SQLException {
+        if (!conn.getAutoCommit()) {
+            conn.rollback();
+            // the indexes dropped for the load are recreated either way
+            finishBulkLoad();
+        }
+    }
+
+    private void finishBulkLoad() throws SQLException {
+        conn.setAutoCommit(true);
+        Statement stmt = conn.createStatement();
+        if (normalizedWriter != null) {
+            normalizedWriter.createIndexes();
+        } else {
+            stmt.execute("CREATE INDEX IF NOT EXISTS configuration_lookup " +
+                    "ON configuration (version, service, role_group, api_name)");
+            // searches match descriptions in configuration_search, then look up their rows
+            stmt.execute("CREATE INDEX IF NOT EXISTS configuration_description_lookup " +
+                    "ON configuration (description)");
+        }
+        stmt.execute("PRAGMA synchronous = FULL");
+        stmt.execute("PRAGMA journal_mode = DELETE");
+        stmt.execute("PRAGMA cache_size = " + previousCacheSize);
+        DbUtils.close(stmt);
+    }
+
+    private void rebuildSearchIndex() throws SQLException {
+        Statement stmt = conn.createStatement();
+        // descriptions repeat across versions and role groups, so only distinct ones are indexed
+        stmt.execute("CREATE VIRTUAL TABLE IF NOT EXISTS configuration_search USING fts4(description)");
+        stmt.execute("DELETE FROM configuration_search");
+        stmt.execute("INSERT INTO configuration_search (description) SELECT DISTINCT description FROM configuration");
+        DbUtils.close(stmt);
+    }
+
+    private void flushBatch() throws SQLException {
+        if (pendingRows > 0) {
+            if (normalizedWriter != null) {
+                normalizedWriter.flush();
             } else {
-                System.err.println("Unknown key: " + key);
+                ps.executeBatch();
             }
+            loadedRows += pendingRows;
+            pendingRows = 0;
         }
     }
 
     public void close() throws SQLException {
+        if (normalizedWriter != null) {
+            normalizedWriter.close();
+        }
         DbUtils.close(ps);
         DbUtils.close(conn);
     }
 
-    private void insertConfigurationForClouderaManager(JsonNode jsonObject) {
-        insertCategories(new ConfigurationHeader("Cloudera Manager"), jsonObject.get("categories"));
+    private void insertConfigurationForClouderaManager(JsonParser parser) throws IOException {
+        loadSection(parser, "Cloudera Manager", Section.CATEGORIES);
     }
 
-    private void insertConfigurationForClouderaManagementServices(JsonNode jsonObject) {
-        insertRoleGroups(new ConfigurationHeader("Cloudera Management Services"), jsonObject.get("roleGroups"));
+    private void insertConfigurationForClouderaManagementServices(JsonParser parser) throws IOException {
+        loadSection(parser, "Cloudera Management Services", Section.ROLE_GROUPS);
     }
 
-    private void insertConfigurationForHosts(JsonNode jsonObject) {
-        insertCategories(new ConfigurationHeader("Hosts"), jsonObject.get("categories"));
+    private void insertConfigurationForHosts(JsonParser parser) throws IOException {
+        loadSection(parser, "Hosts", Section.CATEGORIES);
     }
 
-    private void insertConfigurationForCDH(JsonNode versions) {
-        for (JsonNode version : versions) {
-            ConfigurationHeader header = new ConfigurationHeader("CDH");
-            String versionString = version.get("version").asText().replace("CDH ", "");
-            System.out.println("> " + versionString);
-            for (JsonNode service : version.get("services")) {
-                header.setVersion(versionString);
-                header.setServiceType(service.get("serviceType").asText());
-                insertRoleGroups(header, service.get("roleGroups"));
+    private void insertConfigurationForCDH(JsonParser parser) throws IOException {
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (parser.getCurrentToken() == JsonToken.START_OBJECT) {
+                loadSection(parser, "CDH", Section.VERSION);
+            } else {
+                parser.skipChildren();
             }
         }
     }
 
-    private void insertRoleGroups(ConfigurationHeader header, JsonNode roleGroups) {
-        for (JsonNode roleGroup : roleGroups) {
-            header.setRoleGroupName(roleGroup.get("name").asText());
-            insertCategories(header, roleGroup.get("categories"));
+    private void loadSection(JsonParser parser, String product, Section section) throws IOException {
+        if (scannedBlocks != null) {
+            scannedBlocks.add(hashBlock(parser, product, section));
+        } else if (plannedBlocks != null && !plannedBlocks.next().changed) {
+            parser.skipChildren();
+        } else if (parallelLoad != null) {
+            parallelLoad.submit(parser, product, section);
+        } else {
+            insertSection(parser, new ConfigurationHeader(product), section, databaseSink);
+        }
+    }
+
+    private void insertSection(JsonParser parser, ConfigurationHeader header, Section section,
+                               RowSink sink) throws IOException {
+        // the children of a section are only buffered if they appear before the field naming the section
+        boolean named = section.nameField == null;
+        TokenBuffer pending = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.getCurrentName();
+            parser.nextToken();
+            if (fieldName.equals(section.nameField)) {
+                section.setName(header, parser.getText());
+                if (section == Section.VERSION) {
+                    sink.startVersion(header.getVersion());
+                }
+                named = true;
+            } else if (fieldName.equals(section.childrenField) && parser.getCurrentToken() == JsonToken.START_ARRAY) {
+                if (named) {
+                    insertChildren(parser, header, section, sink);
+                } else {
+                    pending = new TokenBuffer(parser);
+                    pending.copyCurrentStructure(parser);
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        if (pending != null) {
+            JsonParser replay = pending.asParser();
+            try {
+                replay.nextToken();
+                insertChildren(replay, header, section, sink);
+            } finally {
+                replay.close();
+            }
         }
     }
 
-    private void insertCategories(ConfigurationHeader header, JsonNode categories) {
-        for (JsonNode category : categories) {
-            for (JsonNode roleGroupConfigElement : category.get("configs")) {
-                header.setCategoryName(category.get("name").asText());
-                insertConfigToDatabase(header, roleGroupConfigElement);
+    private void insertChildren(JsonParser parser, ConfigurationHeader header, Section section,
+                                RowSink sink) throws IOException {
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (section.child == null) {
+                sink.add(header.toRow(mapper.<JsonNode>readTree(parser)));
+            } else if (parser.getCurrentToken() == JsonToken.START_OBJECT) {
+                insertSection(parser, header, section.child, sink);
+            } else {
+                parser.skipChildren();
             }
         }
     }
 
-    private void insertConfigToDatabase(ConfigurationHeader configurationHeader, JsonNode config) {
+    private final RowSink databaseSink = new RowSink() {
+        public void startVersion(String version) {
+            System.out.println("> " + version);
+        }
+
+        public void add(ConfigurationRow row) {
+            insertConfigToDatabase(row);
+        }
+    };
+
+    private void insertConfigToDatabase(ConfigurationRow row) {
         try {
-            ps.setString(1, configurationHeader.getProduct());
-            ps.setString(2, configurationHeader.getVersion());
-            ps.setString(3, configurationHeader.getServiceType());
-            ps.setString(4, configurationHeader.getRoleGroupName());
-            ps.setString(5, configurationHeader.getCategoryName());
-            ps.setString(6, config.get("apiName").asText());
-            ps.setString(7, config.get("displayName").asText());
-            ps.setString(8, config.get("relatedName").asText());
-            ps.setString(9, config.get("description").asText());
-            ps.setString(10, config.get("defaultValue").asText());
-            ps.setString(11, config.get("units").asText());
-            ps.setInt(12, (config.get("required").asBoolean()) ? 1 : 0);
-            ps.setInt(13, (config.get("sensitive").asBoolean()) ? 1 : 0);
-            ps.executeUpdate();
+            if (normalizedWriter != null) {
+                normalizedWriter.add(row);
+                if (++pendingRows >= batchSize) {
+                    flushBatch();
+                }
+                return;
+            }
+            ps.setString(1, row.getProduct());
+            ps.setString(2, row.getVersion());
+            ps.setString(3, row.getServiceType());
+            ps.setString(4, row.getRoleGroupName());
+            ps.setString(5, row.getCategoryName());
+            ps.setString(6, row.getApiName());
+            ps.setString(7, row.getDisplayName());
+            ps.setString(8, row.getRelatedName());
+            ps.setString(9, row.getDescription());
+            ps.setString(10, row.getDefaultValue());
+            ps.setString(11, row.getUnits());
+            ps.setInt(12, row.isRequired() ? 1 : 0);
+            ps.setInt(13, row.isSensitive() ? 1 : 0);
+            ps.addBatch();
+            if (++pendingRows >= batchSize) {
+                flushBatch();
+            }
         } catch (SQLException e) {
-            e.printStackTrace();
+            // fails the load, which rolls back every row inserted so far
+            throw new RuntimeException("Cannot insert " + row.getApiName() + " of " + row.getProduct() + " " +
+                    row.getVersion(), e);
+        }
+    }
+
+    private interface RowSink {
+        void startVersion(String version);
+
+        void add(ConfigurationRow row);
+    }
+
+    // the rows of a block built by a worker, the version is reported when the writer reaches them
+    private static class BlockRows implements RowSink {
+
+        private final List<ConfigurationRow> rows = new ArrayList<ConfigurationRow>();
+        private String version;
+
+        public void startVersion(String version) {
+            this.version = version;
+        }
+
+        public void add(ConfigurationRow row) {
+            rows.add(row);
+        }
+    }
+
+    // version blocks are buffered by the reading thread, turned into rows by the workers and
+    // written in submission order by a single writer thread, so the table and the progress output
+    // match a serial load
+    private class ParallelLoad {
+
+        private final ExecutorService workers;
+        private final ExecutorService writer = Executors.newSingleThreadExecutor();
+        private final BlockingQueue<Future<BlockRows>> queue;
+        private final Future<BlockRows> end = new FutureTask<BlockRows>(
+                Executors.<BlockRows>callable(new Runnable() {
+                    public void run() {
+                    }
+                }, null));
+        private final Future<Void> written;
+
+        ParallelLoad(int threads) {
+            workers = Executors.newFixedThreadPool(threads);
+            queue = new ArrayBlockingQueue<Future<BlockRows>>(threads * 2);
+            written = writer.submit(new Callable<Void>() {
+                public Void call() throws Exception {
+                    Future<BlockRows> next;
+                    while ((next = queue.take()) != end) {
+                        BlockRows block = next.get();
+                        if (block.version != null) {
+                            System.out.println("> " + block.version);
+                        }
+                        for (ConfigurationRow row : block.rows) {
+                            insertConfigToDatabase(row);
+                        }
+                    }
+                    return null;
+                }
+            });
+        }
+
+        void submit(JsonParser parser, final String product, final Section section) throws IOException {
+            final TokenBuffer buffer = new TokenBuffer(parser);
+            buffer.copyCurrentStructure(parser);
+            enqueue(workers.submit(new Callable<BlockRows>() {
+                public BlockRows call() throws IOException {
+                    BlockRows rows = new BlockRows();
+                    JsonParser replay = buffer.asParser();
+                    try {
+                        replay.nextToken();
+                        insertSection(replay, new ConfigurationHeader(product), section, rows);
+                    } finally {
+                        replay.close();
+                    }
+                    return rows;
+                }
+            }));
+        }
+
+        void finish() throws IOException {
+            enqueue(end);
+            awaitWriter();
+        }
+
+        void shutdown() {
+            workers.shutdownNow();
+            writer.shutdownNow();
+        }
+
+        private void enqueue(Future<BlockRows> rows) throws IOException {
+            try {
+                while (!queue.offer(rows, 1, TimeUnit.SECONDS)) {
+                    if (written.isDone()) {
+                        awaitWriter();
+                        throw new IOException("Configuration writer stopped before the load completed");
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            }
+        }
+
+        private void awaitWriter() throws IOException {
+            try {
+                written.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause() instanceof ExecutionException ? e.getCause().getCause() : e.getCause();
+                if (cause instanceof IOException) throw (IOException) cause;
+                if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                throw new IOException(cause);
+            }
+        }
+    }
+
+    private enum Section {
+        CATEGORY("name", "configs", null) {
+            void setName(ConfigurationHeader header, String name) {
+                header.setCategoryName(name);
+            }
+        },
+        CATEGORIES(null, "categories", CATEGORY),
+        ROLE_GROUP("name", "categories", CATEGORY) {
+            void setName(ConfigurationHeader header, String name) {
+                header.setRoleGroupName(name);
+            }
+        },
+        ROLE_GROUPS(null, "roleGroups", ROLE_GROUP),
+        SERVICE("serviceType", "roleGroups", ROLE_GROUP) {
+            void setName(ConfigurationHeader header, String name) {
+                header.setServiceType(name);
+            }
+        },
+        VERSION("version", "services", SERVICE) {
+            void setName(ConfigurationHeader header, String name) {
+                header.setVersion(versionString(name));
+            }
+        };
+
+        private final String nameField;
+        private final String childrenField;
+        private final Section child;
+
+        Section(String nameField, String childrenField, Section child) {
+            this.nameField = nameField;
+            this.childrenField = childrenField;
+            this.child = child;
+        }
+
+        void setName(ConfigurationHeader header, String name) {
+            // sections without a name field only group their children
+        }
+    }
+
+    private static String versionString(String versionName) {
+        return versionName.replace("CDH ", "");
+    }
+
+    private static class ConfigurationBlock {
+
+        private final String product;
+        private final String version;
+        private final String hash;
+        private boolean changed;
+
+        ConfigurationBlock(String product, String version, String hash) {
+            this.product = product;
+            this.version = version;
+            this.hash = hash;
         }
     }
 
@@ -187,13 +745,74 @@ public class ConfigurationDatabaseLoader {
         public void setCategoryName(String roleGroupCategoryName) {
             this.roleGroupCategoryName = roleGroupCategoryName;
         }
+
+        public ConfigurationRow toRow(JsonNode config) {
+            return new ConfigurationRow(product, version, serviceType, roleGroupName, roleGroupCategoryName, config);
+        }
+    }
+
+    private static Options buildOptions() {
+        Options options = new Options();
+        options.addOption(Option.builder("b")
+                .desc("Number of rows to insert per batch (default " + DEFAULT_BATCH_SIZE + ")")
+                .longOpt("batch_size")
+                .hasArg().argName("ROWS")
+                .build());
+        options.addOption(Option.builder("t")
+                .desc("Number of threads building rows from version blocks in parallel (default 1)")
+                .longOpt("threads")
+                .hasArg().argName("THREADS")
+                .build());
+        options.addOption(Option.builder("i")
+                .desc("Only replace reference blocks whose content changed since the last load")
+                .longOpt("incremental")
+                .build());
+        options.addOption(Option.builder("n")
+                .desc("Store the reference in dictionary-encoded tables behind a 'configuration' view")
+                .longOpt("normalized")
+                .build());
+        options.addOption(Option.builder("x")
+                .desc("Write a memory-mapped lookup snapshot of the reference to FILE after loading")
+                .longOpt("snapshot")
+                .hasArg().argName("FILE")
+                .build());
+        options.addOption(Option.builder("h")
+                .desc("Show help screen")
+                .longOpt("help")
+                .build());
+        return options;
+    }
+
+    private static void printHelp(Options options) {
+        HelpFormatter formatter = new HelpFormatter();
+        formatter.printHelp("CM configuration reference loader", "", options, "", true);
     }
 
     public static void main(String[] args) {
-        ConfigurationDatabaseLoader loader = new ConfigurationDatabaseLoader();
+        Options options = buildOptions();
         try {
+            CommandLine cmd = new DefaultParser().parse(options, args);
+            if (cmd.hasOption("h")) {
+                printHelp(options);
+                System.exit(0);
+            }
+            ConfigurationDatabaseLoader loader = new ConfigurationDatabaseLoader();
+            if (cmd.hasOption("b")) {
+                loader.setBatchSize(Integer.parseInt(cmd.getOptionValue("b")));
+            }
+            loader.setIncremental(cmd.hasOption("i"));
+            loader.setNormalized(cmd.hasOption("n"));
+            if (cmd.hasOption("x")) {
+                loader.setSnapshot(new File(cmd.getOptionValue("x")));
+            }
+            if (cmd.hasOption("t")) {
+                loader.setThreads(Integer.parseInt(cmd.getOptionValue("t")));
+            }
             loader.run();
             loader.close();
+        } catch (ParseException e) {
+            System.err.println(e.getMessage());
+            printHelp(options);
         } catch (IOException e) {
             e.printStackTrace();
         } catch (SQLException e) {
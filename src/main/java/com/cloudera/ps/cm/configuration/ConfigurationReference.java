@@ -0,0 +1,205 @@
+package com.cloudera.ps.cm.configuration;
+
+import org.apache.commons.dbutils.DbUtils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.*;
+import java.util.*;
+
+public class ConfigurationReference implements Closeable {
+
+    private static final int DEFAULT_CACHE_SIZE = 512;
+    private static final String COLUMNS = "product, version, service, role_group, category, api_name, " +
+            "display_name, related_name, description, default_value, units, required, sensitive";
+
+    private final Connection conn;
+    // the dictionary-encoded layout, queried through its tables instead of the configuration view
+    private final boolean normalized;
+    private final PreparedStatement roleGroupQuery;
+    private final PreparedStatement serviceQuery;
+    private final PreparedStatement sensitiveQuery;
+    private final PreparedStatement sensitiveNamesQuery;
+    private final PreparedStatement requiredQuery;
+    private final PreparedStatement searchQuery;
+    private final PreparedStatement versionSearchQuery;
+    private final Map<String, Map<String, ConfigurationRow>> roleGroupCache;
+
+    public ConfigurationReference(String databasePath) throws SQLException {
+        this(databasePath, DEFAULT_CACHE_SIZE);
+    }
+
+    public ConfigurationReference(String databasePath, final int cacheSize) throws SQLException {
+        try {
+            Class.forName("org.sqlite.JDBC");
+        } catch (ClassNotFoundException e) {
+            throw new SQLException(e);
+        }
+        this.conn = DriverManager.getConnection("jdbc:sqlite:" + databasePath);
+        // a database without the reference tables fails here, and must not keep the connection open
+        try {
+            this.normalized = isNormalized();
+            this.roleGroupQuery = conn.prepareStatement(select(
+                    is("version", 1) + " AND " + is("service", 2) + " AND " + is("role_group", 3)));
+            this.serviceQuery = conn.prepareStatement(select(is("version", 1) + " AND " + is("service", 2)));
+            this.sensitiveQuery = conn.prepareStatement(select(is("version", 1) + " AND sensitive = 1"));
+            this.sensitiveNamesQuery = conn.prepareStatement("SELECT DISTINCT api_name FROM configuration " +
+                    "WHERE sensitive = 1");
+            this.requiredQuery = conn.prepareStatement(select(is("version", 1) + " AND required = 1"));
+            this.searchQuery = conn.prepareStatement(select(descriptionMatches(1)));
+            this.versionSearchQuery = conn.prepareStatement(select(is("version", 1) + " AND " + descriptionMatches(2)));
+            this.roleGroupCache = new LinkedHashMap<String, Map<String, ConfigurationRow>>(16, 0.75f, true) {
+                protected boolean removeEldestEntry(Map.Entry<String, Map<String, ConfigurationRow>> eldest) {
+                    return size() > cacheSize;
+                }
+            };
+        } catch (SQLException e) {
+            DbUtils.closeQuietly(conn);
+            throw e;
+        } catch (RuntimeException e) {
+            DbUtils.closeQuietly(conn);
+            throw e;
+        }
+    }
+
+    private boolean isNormalized() throws SQLException {
+        Statement stmt = conn.createStatement();
+        try {
+            ResultSet rs = stmt.executeQuery("SELECT type FROM sqlite_master WHERE name = 'configuration'");
+            return rs.next() && "view".equals(rs.getString(1));
+        } finally {
+            DbUtils.close(stmt);
+        }
+    }
+
+    private String select(String condition) {
+        return (normalized ? NormalizedConfigurationWriter.ENTRY_QUERY : "SELECT " + COLUMNS + " FROM configuration")
+                + " WHERE " + condition;
+    }
+
+    // the column equals parameter n, or both are null. SQLite 3.8 finds the flat rows of either through
+    // configuration_lookup, the normalized ones through configuration_entry_lookup
+    private String is(String column, int n) {
+        return normalized ? NormalizedConfigurationWriter.stringIdIs("entry." + column + "_id", n)
+                : column + " IS ?" + n;
+    }
+
+    // the descriptions are matched in configuration_search first, then their rows looked up by index
+    private String descriptionMatches(int n) {
+        String descriptions = "SELECT description FROM configuration_search WHERE description MATCH ?" + n;
+        return normalized ? NormalizedConfigurationWriter.descriptionIn(descriptions)
+                : "description IN (" + descriptions + ")";
+    }
+
+    public synchronized ConfigurationRow lookup(String version, String service, String roleGroup,
+                                                String apiName) throws SQLException {
+        return getParameters(version, service, roleGroup).get(apiName);
+    }
+
+    // a role group is loaded in a single query and cached, so validating all of its properties
+    // costs one round trip to SQLite
+    public synchronized Map<String, ConfigurationRow> getParameters(String version, String service,
+                                                                    String roleGroup) throws SQLException {
+        String key = version + "\u0000" + service + "\u0000" + roleGroup;
+        Map<String, ConfigurationRow> parameters = roleGroupCache.get(key);
+        if (parameters == null) {
+            parameters = new HashMap<String, ConfigurationRow>();
+            roleGroupQuery.setString(1, version);
+            roleGroupQuery.setString(2, service);
+            roleGroupQuery.setString(3, roleGroup);
+            for (ConfigurationRow row : query(roleGroupQuery)) {
+                if (!parameters.containsKey(row.getApiName())) {
+                    parameters.put(row.getApiName(), row);
+                }
+            }
+            parameters = Collections.unmodifiableMap(parameters);
+            roleGroupCache.put(key, parameters);
+        }
+        return parameters;
+    }
+
+    // the parameters of every role group of a service keyed by role group, then api name
+    public synchronized Map<String, Map<String, ConfigurationRow>> getServiceParameters(String version,
+                                                                                      String service) throws SQLException {
+        Map<String, Map<String, ConfigurationRow>> roleGroups = new HashMap<String, Map<String, ConfigurationRow>>();
+        serviceQuery.setString(1, version);
+        serviceQuery.setString(2, service);
+        for (ConfigurationRow row : query(serviceQuery)) {
+            Map<String, ConfigurationRow> parameters = roleGroups.get(row.getRoleGroupName());
+            if (parameters == null) {
+                parameters = new HashMap<String, ConfigurationRow>();
+                roleGroups.put(row.getRoleGroupName(), parameters);
+            }
+            if (!parameters.containsKey(row.getApiName())) {
+                parameters.put(row.getApiName(), row);
+            }
+        }
+        return roleGroups;
+    }
+
+    public synchronized List<ConfigurationRow> listSensitive(String version) throws SQLException {
+        sensitiveQuery.setString(1, version);
+        return query(sensitiveQuery);
+    }
+
+    // the api names that are sensitive in any version
+    public synchronized Set<String> listSensitiveNames() throws SQLException {
+        Set<String> names = new HashSet<String>();
+        ResultSet rs = sensitiveNamesQuery.executeQuery();
+        try {
+            while (rs.next()) {
+                names.add(rs.getString(1));
+            }
+        } finally {
+            DbUtils.close(rs);
+        }
+        return names;
+    }
+
+    public synchronized List<ConfigurationRow> listRequired(String version) throws SQLException {
+        requiredQuery.setString(1, version);
+        return query(requiredQuery);
+    }
+
+    public synchronized List<ConfigurationRow> search(String text) throws SQLException {
+        searchQuery.setString(1, text);
+        return query(searchQuery);
+    }
+
+    public synchronized List<ConfigurationRow> search(String version, String text) throws SQLException {
+        versionSearchQuery.setString(1, version);
+        versionSearchQuery.setString(2, text);
+        return query(versionSearchQuery);
+    }
+
+    public synchronized void close() throws IOException {
+        try {
+            DbUtils.close(roleGroupQuery);
+            DbUtils.close(serviceQuery);
+            DbUtils.close(sensitiveQuery);
+            DbUtils.close(sensitiveNamesQuery);
+            DbUtils.close(requiredQuery);
+            DbUtils.close(searchQuery);
+            DbUtils.close(versionSearchQuery);
+            DbUtils.close(conn);
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private List<ConfigurationRow> query(PreparedStatement statement) throws SQLException {
+        List<ConfigurationRow> rows = new ArrayList<ConfigurationRow>();
+        ResultSet rs = statement.executeQuery();
+        try {
+            while (rs.next()) {
+                rows.add(new ConfigurationRow(rs.getString(1), rs.getString(2), rs.getString(3),
+                        rs.getString(4), rs.getString(5), rs.getString(6), rs.getString(7), rs.getString(8),
+                        rs.getString(9), rs.getString(10), rs.getString(11), rs.getInt(12) != 0,
+                        rs.getInt(13) != 0));
+            }
+        } finally {
+            DbUtils.close(rs);
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,103 @@
+package com.cloudera.ps.cm.configuration;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+public class ConfigurationRow {
+
+    private final String product;
+    private final String version;
+    private final String serviceType;
+    private final String roleGroupName;
+    private final String categoryName;
+    private final String apiName;
+    private final String displayName;
+    private final String relatedName;
+    private final String description;
+    private final String defaultValue;
+    private final String units;
+    private final boolean required;
+    private final boolean sensitive;
+
+    ConfigurationRow(String product, String version, String serviceType, String roleGroupName,
+                     String categoryName, JsonNode config) {
+        this(product, version, serviceType, roleGroupName, categoryName,
+                config.get("apiName").asText(),
+                config.get("displayName").asText(),
+                config.get("relatedName").asText(),
+                config.get("description").asText(),
+                config.get("defaultValue").asText(),
+                config.get("units").asText(),
+                config.get("required").asBoolean(),
+                config.get("sensitive").asBoolean());
+    }
+
+    ConfigurationRow(String product, String version, String serviceType, String roleGroupName,
+                     String categoryName, String apiName, String displayName, String relatedName,
+                     String description, String defaultValue, String units, boolean required, boolean sensitive) {
+        this.product = product;
+        this.version = version;
+        this.serviceType = serviceType;
+        this.roleGroupName = roleGroupName;
+        this.categoryName = categoryName;
+        this.apiName = apiName;
+        this.displayName = displayName;
+        this.relatedName = relatedName;
+        this.description = description;
+        this.defaultValue = defaultValue;
+        this.units = units;
+        this.required = required;
+        this.sensitive = sensitive;
+    }
+
+    public String getProduct() {
+        return product;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public String getServiceType() {
+        return serviceType;
+    }
+
+    public String getRoleGroupName() {
+        return roleGroupName;
+    }
+
+    public String getCategoryName() {
+        return categoryName;
+    }
+
+    public String getApiName() {
+        return apiName;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    public String getRelatedName() {
+        return relatedName;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public String getDefaultValue() {
+        return defaultValue;
+    }
+
+    public String getUnits() {
+        return units;
+    }
+
+    public boolean isRequired() {
+        return required;
+    }
+
+    public boolean isSensitive() {
+        return sensitive;
+    }
+}
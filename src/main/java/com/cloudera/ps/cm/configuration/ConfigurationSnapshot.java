@@ -0,0 +1,160 @@
+package com.cloudera.ps.cm.configuration;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import static com.cloudera.ps.cm.configuration.ConfigurationSnapshotWriter.*;
+
+public class ConfigurationSnapshot implements Closeable {
+
+    private static final int VERSION = 0;
+    private static final int SERVICE = 1;
+    private static final int ROLE_GROUP = 2;
+    private static final int API_NAME = 3;
+    private static final int PRODUCT = 4;
+    private static final int CATEGORY = 5;
+    private static final int DISPLAY_NAME = 6;
+    private static final int RELATED_NAME = 7;
+    private static final int DESCRIPTION = 8;
+    private static final int DEFAULT_VALUE = 9;
+    private static final int UNITS = 10;
+    private static final int FLAGS = 11;
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private final int entryCount;
+    private final int heapOffset;
+
+    public ConfigurationSnapshot(File snapshot) throws IOException {
+        this.file = new RandomAccessFile(snapshot, "r");
+        this.buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION) {
+            file.close();
+            throw new IOException("Not a configuration snapshot: " + snapshot);
+        }
+        this.entryCount = buffer.getInt(8);
+        this.heapOffset = buffer.getInt(12);
+    }
+
+    public int size() {
+        return entryCount;
+    }
+
+    // returns the index of the first entry with the given key, or -1
+    public int find(String version, String service, String roleGroup, String apiName) {
+        int low = 0;
+        int high = entryCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compareKey(mid, version, service, roleGroup, apiName) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        if (low < entryCount && compareKey(low, version, service, roleGroup, apiName) == 0) {
+            return low;
+        }
+        return -1;
+    }
+
+    public boolean isRequired(int entry) {
+        return (field(entry, FLAGS) & 1) != 0;
+    }
+
+    public boolean isSensitive(int entry) {
+        return (field(entry, FLAGS) & 2) != 0;
+    }
+
+    public String getDefaultValue(int entry) {
+        return string(field(entry, DEFAULT_VALUE));
+    }
+
+    public String getDisplayName(int entry) {
+        return string(field(entry, DISPLAY_NAME));
+    }
+
+    public String getUnits(int entry) {
+        return string(field(entry, UNITS));
+    }
+
+    public ConfigurationRow getRow(int entry) {
+        return new ConfigurationRow(string(field(entry, PRODUCT)), string(field(entry, VERSION)),
+                string(field(entry, SERVICE)), string(field(entry, ROLE_GROUP)), string(field(entry, CATEGORY)),
+                string(field(entry, API_NAME)), string(field(entry, DISPLAY_NAME)),
+                string(field(entry, RELATED_NAME)), string(field(entry, DESCRIPTION)),
+                string(field(entry, DEFAULT_VALUE)), string(field(entry, UNITS)),
+                isRequired(entry), isSensitive(entry));
+    }
+
+    public void close() throws IOException {
+        file.close();
+    }
+
+    private int field(int entry, int field) {
+        return buffer.getInt(HEADER_SIZE + entry * ENTRY_SIZE + field * 4);
+    }
+
+    private int compareKey(int entry, String version, String service, String roleGroup, String apiName) {
+        int c = compare(field(entry, VERSION), version);
+        if (c == 0) c = compare(field(entry, SERVICE), service);
+        if (c == 0) c = compare(field(entry, ROLE_GROUP), roleGroup);
+        if (c == 0) c = compare(field(entry, API_NAME), apiName);
+        return c;
+    }
+
+    // compares the stored UTF-8 bytes with the value without decoding or encoding into new arrays
+    private int compare(int offset, String value) {
+        if (offset < 0 || value == null) {
+            return offset < 0 ? (value == null ? 0 : -1) : 1;
+        }
+        int pos = heapOffset + offset + 4;
+        int end = pos + buffer.getInt(heapOffset + offset);
+        for (int i = 0; i < value.length(); ) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                if (pos == end) return -1;
+                int actual = buffer.get(pos++) & 0xff;
+                if (actual != c) return actual - c;
+                i++;
+                continue;
+            }
+            int codePoint = value.codePointAt(i);
+            i += Character.charCount(codePoint);
+            int length = codePoint < 0x80 ? 1 : codePoint < 0x800 ? 2 : codePoint < 0x10000 ? 3 : 4;
+            for (int b = 0; b < length; b++) {
+                if (pos == end) return -1;
+                int expected = utf8Byte(codePoint, length, b);
+                int actual = buffer.get(pos++) & 0xff;
+                if (actual != expected) return actual - expected;
+            }
+        }
+        return pos == end ? 0 : 1;
+    }
+
+    private static int utf8Byte(int codePoint, int length, int index) {
+        if (length == 1) {
+            return codePoint;
+        }
+        int shift = 6 * (length - 1 - index);
+        if (index == 0) {
+            return ((0xf00 >> length) & 0xff) | (codePoint >> shift);
+        }
+        return 0x80 | ((codePoint >> shift) & 0x3f);
+    }
+
+    private String string(int offset) {
+        if (offset < 0) {
+            return null;
+        }
+        byte[] data = new byte[buffer.getInt(heapOffset + offset)];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = buffer.get(heapOffset + offset + 4 + i);
+        }
+        return new String(data, UTF_8);
+    }
+}
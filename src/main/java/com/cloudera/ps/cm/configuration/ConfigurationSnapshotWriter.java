@@ -0,0 +1,104 @@
+package com.cloudera.ps.cm.configuration;
+
+import com.google.common.primitives.UnsignedBytes;
+import org.apache.commons.dbutils.DbUtils;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.sql.*;
+import java.util.*;
+
+public class ConfigurationSnapshotWriter {
+
+    static final int MAGIC = 0x434d5253;
+    static final int FORMAT_VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final int ENTRY_FIELDS = 12;
+    static final int ENTRY_SIZE = ENTRY_FIELDS * 4;
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final Map<String, byte[]> encoded = new HashMap<String, byte[]>();
+    private final Map<String, Integer> offsets = new LinkedHashMap<String, Integer>();
+    private int heapSize;
+
+    public void write(Connection conn, File output) throws SQLException, IOException {
+        List<String[]> entries = new ArrayList<String[]>();
+        List<Integer> flags = new ArrayList<Integer>();
+        Statement stmt = conn.createStatement();
+        ResultSet rs = stmt.executeQuery("SELECT version, service, role_group, api_name, product, category, " +
+                "display_name, related_name, description, default_value, units, required, sensitive FROM configuration");
+        try {
+            while (rs.next()) {
+                String[] entry = new String[ENTRY_FIELDS - 1];
+                for (int i = 0; i < entry.length; i++) {
+                    entry[i] = intern(rs.getString(i + 1));
+                }
+                entries.add(entry);
+                flags.add((rs.getInt(12) != 0 ? 1 : 0) | (rs.getInt(13) != 0 ? 2 : 0));
+            }
+        } finally {
+            DbUtils.close(rs);
+            DbUtils.close(stmt);
+        }
+
+        // entries are sorted on the raw UTF-8 bytes of the key, which is the order the reader compares in
+        Integer[] order = new Integer[entries.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        final List<String[]> sortable = entries;
+        final Comparator<byte[]> bytes = UnsignedBytes.lexicographicalComparator();
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer left, Integer right) {
+                String[] l = sortable.get(left);
+                String[] r = sortable.get(right);
+                for (int i = 0; i < 4; i++) {
+                    int c = compareKey(l[i], r[i], bytes);
+                    if (c != 0) return c;
+                }
+                return 0;
+            }
+        });
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(output)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(order.length);
+            out.writeInt(HEADER_SIZE + order.length * ENTRY_SIZE);
+            for (Integer index : order) {
+                for (String value : entries.get(index)) {
+                    out.writeInt(value == null ? -1 : offsets.get(value));
+                }
+                out.writeInt(flags.get(index));
+            }
+            for (String value : offsets.keySet()) {
+                byte[] data = encoded.get(value);
+                out.writeInt(data.length);
+                out.write(data);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private String intern(String value) {
+        if (value == null) {
+            return null;
+        }
+        if (!offsets.containsKey(value)) {
+            byte[] data = value.getBytes(UTF_8);
+            encoded.put(value, data);
+            offsets.put(value, heapSize);
+            heapSize += 4 + data.length;
+        }
+        return value;
+    }
+
+    private int compareKey(String left, String right, Comparator<byte[]> bytes) {
+        if (left == null || right == null) {
+            return left == null ? (right == null ? 0 : -1) : 1;
+        }
+        return bytes.compare(encoded.get(left), encoded.get(right));
+    }
+}
@@ -0,0 +1,297 @@
+package com.cloudera.ps.cm.configuration;
+
+import com.cloudera.ps.cm.api.deployment.format.DeploymentFormats;
+import com.cloudera.ps.cm.api.deployment.transform.ObjectNodeFieldFilter;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.apache.commons.dbutils.DbUtils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+
+// flattens deployments into one row per configured property in deployment_configuration, next to the reference.
+// product, version, service_type and role_group are the reference keys of the property, as the loader writes
+// them, so that queries can join the configuration table on product, version, service, role_group and api_name.
+// Only CDH rows have all of them, the reference has no version or service type for the management services and
+// no version, service type or role group for hosts and Cloudera Manager, so the join has to compare with IS
+public class DeploymentConfigurationExporter implements Closeable {
+
+    private static final int DEFAULT_BATCH_SIZE = 10000;
+    private static final String CDH = "CDH";
+    private static final String MANAGEMENT_SERVICES = "Cloudera Management Services";
+    private static final String MANAGER = "Cloudera Manager";
+    private static final String HOSTS = "Hosts";
+    // the columns after snapshot, in the order of the rows
+    private static final String COLUMNS = "product, version, cluster, service, service_type, scope, " +
+            "role_config_group, role, role_group, host, api_name, value";
+    private static final int COLUMN_COUNT = 12;
+
+    private final Connection conn;
+    private final ObjectNodeFieldFilter filter;
+    private final DeploymentFormats formats = new DeploymentFormats();
+    private PreparedStatement insert;
+    private PreparedStatement delete;
+    private int previousCacheSize;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private int threads = 1;
+    private long started;
+    private int pendingRows;
+    private long exportedRows;
+    private int exportedSnapshots;
+
+    // the values of filtered properties are exported as REDACTED
+    public DeploymentConfigurationExporter(String databasePath, ObjectNodeFieldFilter filter) throws SQLException {
+        try {
+            Class.forName("org.sqlite.JDBC");
+        } catch (ClassNotFoundException e) {
+            throw new SQLException(e);
+        }
+        this.conn = DriverManager.getConnection("jdbc:sqlite:" + databasePath);
+        this.filter = filter;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    // number of threads reading and flattening files, rows are still written by the calling thread
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    // replaces the rows of the snapshot, if it was exported before
+    public void export(String snapshot, JsonNode deployment) throws SQLException {
+        begin(false);
+        try {
+            write(snapshot, flatten(deployment));
+            end();
+        } finally {
+            rollbackUnlessEnded();
+        }
+    }
+
+    // every file is a snapshot named after the file, all of them are exported in a single transaction
+    public void export(List<File> inputs) throws IOException, SQLException {
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        // files are flattened at most this far ahead of the writer, which bounds the rows held in memory
+        int window = threads * 2;
+        List<Future<List<String[]>>> flattened = new ArrayList<Future<List<String[]>>>();
+        begin(inputs.size() > 1);
+        try {
+            for (int i = 0; i < inputs.size(); i++) {
+                while (flattened.size() < Math.min(inputs.size(), i + window)) {
+                    final File input = inputs.get(flattened.size());
+                    flattened.add(workers.submit(new Callable<List<String[]>>() {
+                        public List<String[]> call() throws IOException {
+                            return flatten(formats.read(input));
+                        }
+                    }));
+                }
+                write(inputs.get(i).getName(), await(flattened.get(i)));
+                flattened.set(i, null);
+            }
+            end();
+        } finally {
+            workers.shutdownNow();
+            rollbackUnlessEnded();
+        }
+    }
+
+    private List<String[]> await(Future<List<String[]>> rows) throws IOException {
+        try {
+            return rows.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private void createTable() throws SQLException {
+        Statement stmt = conn.createStatement();
+        stmt.execute("CREATE TABLE IF NOT EXISTS deployment_configuration\n" +
+                "(\n" +
+                "    snapshot TEXT NOT NULL,\n" +
+                "    product TEXT,\n" +
+                "    version TEXT,\n" +
+                "    cluster TEXT,\n" +
+                "    service TEXT,\n" +
+                "    service_type TEXT,\n" +
+                "    scope TEXT,\n" +
+                "    role_config_group TEXT,\n" +
+                "    role TEXT,\n" +
+                "    role_group TEXT,\n" +
+                "    host TEXT,\n" +
+                "    api_name TEXT,\n" +
+                "    value TEXT\n" +
+                ");\n");
+        // replacing a snapshot deletes by this one, so it is kept during bulk loads
+        stmt.execute("CREATE INDEX IF NOT EXISTS deployment_configuration_snapshot " +
+                "ON deployment_configuration (snapshot)");
+        DbUtils.close(stmt);
+    }
+
+    private void begin(boolean bulk) throws SQLException {
+        createTable();
+        Statement stmt = conn.createStatement();
+        if (bulk) {
+            // as for the reference, rebuilding the join indexes once at the end is much cheaper than
+            // maintaining them per row
+            stmt.execute("DROP INDEX IF EXISTS deployment_configuration_lookup");
+            stmt.execute("DROP INDEX IF EXISTS deployment_configuration_api_name");
+        }
+        ResultSet rs = stmt.executeQuery("PRAGMA cache_size");
+        previousCacheSize = rs.getInt(1);
+        DbUtils.close(rs);
+        stmt.execute("PRAGMA journal_mode = MEMORY");
+        stmt.execute("PRAGMA synchronous = OFF");
+        stmt.execute("PRAGMA cache_size = -65536");
+        DbUtils.close(stmt);
+        conn.setAutoCommit(false);
+        insert = conn.prepareStatement("INSERT INTO deployment_configuration (snapshot, " + COLUMNS + ") " +
+                "VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?)");
+        delete = conn.prepareStatement("DELETE FROM deployment_configuration WHERE snapshot = ?");
+        started = System.nanoTime();
+        pendingRows = 0;
+        exportedRows = 0;
+        exportedSnapshots = 0;
+    }
+
+    private void end() throws SQLException {
+        flushBatch();
+        conn.commit();
+        finish();
+        double seconds = (System.nanoTime() - started) / 1e9;
+        System.err.println(String.format("Exported %d rows of %d snapshots in %.1fs (%.0f rows/sec)",
+                exportedRows, exportedSnapshots, seconds, exportedRows / seconds));
+    }
+
+    private void rollbackUnlessEnded() throws SQLException {
+        if (!conn.getAutoCommit()) {
+            conn.rollback();
+            // the indexes dropped for a bulk load are recreated either way
+            finish();
+        }
+    }
+
+    private void finish() throws SQLException {
+        conn.setAutoCommit(true);
+        closeStatements();
+        Statement stmt = conn.createStatement();
+        // the keys are NULL outside of CDH, joins looking them up with IS still use the index
+        stmt.execute("CREATE INDEX IF NOT EXISTS deployment_configuration_lookup " +
+                "ON deployment_configuration (version, service_type, role_group, api_name)");
+        stmt.execute("CREATE INDEX IF NOT EXISTS deployment_configuration_api_name " +
+                "ON deployment_configuration (api_name)");
+        stmt.execute("PRAGMA synchronous = FULL");
+        stmt.execute("PRAGMA journal_mode = DELETE");
+        stmt.execute("PRAGMA cache_size = " + previousCacheSize);
+        DbUtils.close(stmt);
+    }
+
+    private void closeStatements() {
+        DbUtils.closeQuietly(insert);
+        DbUtils.closeQuietly(delete);
+        insert = null;
+        delete = null;
+    }
+
+    private void write(String snapshot, List<String[]> rows) throws SQLException {
+        delete.setString(1, snapshot);
+        delete.executeUpdate();
+        for (String[] row : rows) {
+            insert.setString(1, snapshot);
+            for (int i = 0; i < COLUMN_COUNT; i++) {
+                insert.setString(i + 2, row[i]);
+            }
+            insert.addBatch();
+            if (++pendingRows >= batchSize) {
+                flushBatch();
+            }
+        }
+        exportedSnapshots++;
+    }
+
+    private void flushBatch() throws SQLException {
+        if (pendingRows > 0) {
+            insert.executeBatch();
+            exportedRows += pendingRows;
+            pendingRows = 0;
+        }
+    }
+
+    public void close() {
+        closeStatements();
+        DbUtils.closeQuietly(conn);
+    }
+
+    // reads the deployment as exported by CM, before any reformatting
+    private List<String[]> flatten(JsonNode deployment) {
+        List<String[]> rows = new ArrayList<String[]>();
+        Map<String, String> hostnames = new HashMap<String, String>();
+        for (JsonNode host : deployment.path("hosts")) {
+            hostnames.put(host.path("hostId").asText(), host.path("hostname").asText());
+        }
+        for (JsonNode cluster : deployment.path("clusters")) {
+            for (JsonNode service : cluster.path("services")) {
+                addService(rows, CDH, cluster.path("fullVersion").asText(null), cluster.path("name").asText(null),
+                        service, true, hostnames);
+            }
+        }
+        if (deployment.has("managementService")) {
+            // the reference lists the management role groups without a version or service type
+            addService(rows, MANAGEMENT_SERVICES, null, null, deployment.path("managementService"), false, hostnames);
+        }
+        for (JsonNode host : deployment.path("hosts")) {
+            addItems(rows, new String[]{HOSTS, null, null, null, null, "host", null, null, null,
+                    host.path("hostname").asText(null)}, host.path("config").path("items"));
+        }
+        addItems(rows, new String[]{MANAGER, null, null, null, null, "cm", null, null, null, null},
+                deployment.path("managerSettings").path("items"));
+        addItems(rows, new String[]{HOSTS, null, null, null, null, "allHosts", null, null, null, null},
+                deployment.path("allHostsConfig").path("items"));
+        return rows;
+    }
+
+    private void addService(List<String[]> rows, String product, String version, String cluster, JsonNode service,
+                            boolean typed, Map<String, String> hostnames) {
+        String name = service.path("name").asText(null);
+        String type = service.path("type").asText(null);
+        String serviceType = typed ? type : null;
+        // the reference lists the service-wide properties under a role group named after the service type
+        addItems(rows, new String[]{product, version, cluster, name, serviceType, "service", null, null, type, null},
+                service.path("config").path("items"));
+        for (JsonNode group : service.path("roleConfigGroups")) {
+            addItems(rows, new String[]{product, version, cluster, name, serviceType, "roleConfigGroup",
+                    group.path("name").asText(null), null, group.path("roleType").asText(null), null},
+                    group.path("config").path("items"));
+        }
+        for (JsonNode role : service.path("roles")) {
+            addItems(rows, new String[]{product, version, cluster, name, serviceType, "role",
+                    role.path("roleConfigGroupRef").path("roleConfigGroupName").asText(null),
+                    role.path("name").asText(null), role.path("type").asText(null),
+                    hostnames.get(role.path("hostRef").path("hostId").asText())},
+                    role.path("config").path("items"));
+        }
+    }
+
+    // the header holds the columns up to host, each item adds api_name and value
+    private void addItems(List<String[]> rows, String[] header, JsonNode items) {
+        for (JsonNode item : items) {
+            String[] row = Arrays.copyOf(header, COLUMN_COUNT);
+            row[10] = item.path("name").asText(null);
+            row[11] = filter.isFiltered(row[10]) ? "REDACTED" : item.path("value").asText(null);
+            rows.add(row);
+        }
+    }
+}
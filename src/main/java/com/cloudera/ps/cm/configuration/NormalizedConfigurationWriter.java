@@ -0,0 +1,240 @@
+package com.cloudera.ps.cm.configuration;
+
+import org.apache.commons.dbutils.DbUtils;
+
+import java.sql.*;
+import java.util.HashMap;
+import java.util.Map;
+
+class NormalizedConfigurationWriter {
+
+    // the rows of the flat layout, as selected by the configuration view. SQLite keeps the left joins in
+    // their order, so conditions on the view columns scan every entry, queries that should use the
+    // indexes add conditions on the entry and parameter ids to this instead
+    static final String ENTRY_QUERY = "SELECT product.value AS product,\n" +
+            "       version.value AS version,\n" +
+            "       service.value AS service,\n" +
+            "       role_group.value AS role_group,\n" +
+            "       category.value AS category,\n" +
+            "       api_name.value AS api_name,\n" +
+            "       display_name.value AS display_name,\n" +
+            "       related_name.value AS related_name,\n" +
+            "       description.value AS description,\n" +
+            "       default_value.value AS default_value,\n" +
+            "       units.value AS units,\n" +
+            "       parameter.required AS required,\n" +
+            "       parameter.sensitive AS sensitive\n" +
+            "FROM configuration_entry entry\n" +
+            "JOIN configuration_parameter parameter ON parameter.id = entry.parameter_id\n" +
+            "LEFT JOIN configuration_string product ON product.id = entry.product_id\n" +
+            "LEFT JOIN configuration_string version ON version.id = entry.version_id\n" +
+            "LEFT JOIN configuration_string service ON service.id = entry.service_id\n" +
+            "LEFT JOIN configuration_string role_group ON role_group.id = entry.role_group_id\n" +
+            "LEFT JOIN configuration_string category ON category.id = entry.category_id\n" +
+            "LEFT JOIN configuration_string api_name ON api_name.id = parameter.api_name_id\n" +
+            "LEFT JOIN configuration_string display_name ON display_name.id = parameter.display_name_id\n" +
+            "LEFT JOIN configuration_string related_name ON related_name.id = parameter.related_name_id\n" +
+            "LEFT JOIN configuration_description description ON description.id = parameter.description_id\n" +
+            "LEFT JOIN configuration_string default_value ON default_value.id = parameter.default_value_id\n" +
+            "LEFT JOIN configuration_string units ON units.id = parameter.units_id";
+
+    // a condition on an id column of ENTRY_QUERY matching the string bound to parameter number n, or null
+    // when that is null. A string missing from the dictionary matches nothing
+    static String stringIdIs(String idColumn, int n) {
+        return idColumn + " IS (CASE WHEN ?" + n + " IS NULL THEN NULL " +
+                "ELSE IFNULL((SELECT id FROM configuration_string WHERE value = ?" + n + "), -1) END)";
+    }
+
+    // a condition on ENTRY_QUERY matching the entries whose description is one of those selected by the
+    // given subquery
+    static String descriptionIn(String descriptions) {
+        return "entry.parameter_id IN (SELECT id FROM configuration_parameter WHERE description_id IN " +
+                "(SELECT id FROM configuration_description WHERE value IN (" + descriptions + ")))";
+    }
+
+    private final Connection conn;
+    private final Map<String, Integer> stringIds = new HashMap<String, Integer>();
+    private final Map<String, Integer> descriptionIds = new HashMap<String, Integer>();
+    private final Map<String, Integer> parameterIds = new HashMap<String, Integer>();
+
+    private PreparedStatement insertString;
+    private PreparedStatement insertDescription;
+    private PreparedStatement insertParameter;
+    private PreparedStatement insertEntry;
+    private PreparedStatement deleteEntries;
+
+    NormalizedConfigurationWriter(Connection conn) {
+        this.conn = conn;
+    }
+
+    void createSchema() throws SQLException {
+        Statement stmt = conn.createStatement();
+        stmt.execute("CREATE TABLE IF NOT EXISTS configuration_string\n" +
+                "(\n" +
+                "    id INTEGER PRIMARY KEY,\n" +
+                "    value TEXT NOT NULL UNIQUE\n" +
+                ");\n");
+        stmt.execute("CREATE TABLE IF NOT EXISTS configuration_description\n" +
+                "(\n" +
+                "    id INTEGER PRIMARY KEY,\n" +
+                "    value TEXT NOT NULL UNIQUE\n" +
+                ");\n");
+        stmt.execute("CREATE TABLE IF NOT EXISTS configuration_parameter\n" +
+                "(\n" +
+                "    id INTEGER PRIMARY KEY,\n" +
+                "    api_name_id INTEGER,\n" +
+                "    display_name_id INTEGER,\n" +
+                "    related_name_id INTEGER,\n" +
+                "    description_id INTEGER,\n" +
+                "    default_value_id INTEGER,\n" +
+                "    units_id INTEGER,\n" +
+                "    required INTEGER,\n" +
+                "    sensitive INTEGER\n" +
+                ");\n");
+        stmt.execute("CREATE TABLE IF NOT EXISTS configuration_entry\n" +
+                "(\n" +
+                "    product_id INTEGER,\n" +
+                "    version_id INTEGER,\n" +
+                "    service_id INTEGER,\n" +
+                "    role_group_id INTEGER,\n" +
+                "    category_id INTEGER,\n" +
+                "    parameter_id INTEGER NOT NULL\n" +
+                ");\n");
+        // keeps existing queries against the flat layout working
+        stmt.execute("CREATE VIEW IF NOT EXISTS configuration AS\n" + ENTRY_QUERY + ";\n");
+        DbUtils.close(stmt);
+    }
+
+    void dropIndexes() throws SQLException {
+        Statement stmt = conn.createStatement();
+        stmt.execute("DROP INDEX IF EXISTS configuration_entry_lookup");
+        stmt.execute("DROP INDEX IF EXISTS configuration_entry_parameter");
+        DbUtils.close(stmt);
+    }
+
+    void createIndexes() throws SQLException {
+        Statement stmt = conn.createStatement();
+        stmt.execute("CREATE INDEX IF NOT EXISTS configuration_entry_lookup " +
+                "ON configuration_entry (version_id, service_id, role_group_id)");
+        // for searches, which find the parameters of the matching descriptions first
+        stmt.execute("CREATE INDEX IF NOT EXISTS configuration_entry_parameter " +
+                "ON configuration_entry (parameter_id)");
+        stmt.execute("CREATE INDEX IF NOT EXISTS configuration_parameter_description " +
+                "ON configuration_parameter (description_id)");
+        DbUtils.close(stmt);
+    }
+
+    void open() throws SQLException {
+        loadIds("SELECT id, value FROM configuration_string", stringIds);
+        loadIds("SELECT id, value FROM configuration_description", descriptionIds);
+        loadIds("SELECT id, IFNULL(api_name_id, 'null') || ',' || IFNULL(display_name_id, 'null') || ',' || " +
+                "IFNULL(related_name_id, 'null') || ',' || IFNULL(description_id, 'null') || ',' || " +
+                "IFNULL(default_value_id, 'null') || ',' || IFNULL(units_id, 'null') || ',' || " +
+                "required || ',' || sensitive FROM configuration_parameter", parameterIds);
+        insertString = conn.prepareStatement("INSERT INTO configuration_string (id, value) VALUES (?,?)");
+        insertDescription = conn.prepareStatement("INSERT INTO configuration_description (id, value) VALUES (?,?)");
+        insertParameter = conn.prepareStatement("INSERT INTO configuration_parameter (id, api_name_id, " +
+                "display_name_id, related_name_id, description_id, default_value_id, units_id, required, sensitive) " +
+                "VALUES (?,?,?,?,?,?,?,?,?)");
+        insertEntry = conn.prepareStatement("INSERT INTO configuration_entry (product_id, version_id, service_id, " +
+                "role_group_id, category_id, parameter_id) VALUES (?,?,?,?,?,?)");
+    }
+
+    void add(ConfigurationRow row) throws SQLException {
+        Integer apiName = stringId(row.getApiName());
+        Integer displayName = stringId(row.getDisplayName());
+        Integer relatedName = stringId(row.getRelatedName());
+        Integer description = id(row.getDescription(), descriptionIds, insertDescription);
+        Integer defaultValue = stringId(row.getDefaultValue());
+        Integer units = stringId(row.getUnits());
+        int required = row.isRequired() ? 1 : 0;
+        int sensitive = row.isSensitive() ? 1 : 0;
+        String parameterKey = apiName + "," + displayName + "," + relatedName + "," + description + "," +
+                defaultValue + "," + units + "," + required + "," + sensitive;
+        Integer parameter = parameterIds.get(parameterKey);
+        if (parameter == null) {
+            parameter = parameterIds.size() + 1;
+            parameterIds.put(parameterKey, parameter);
+            insertParameter.setInt(1, parameter);
+            setId(insertParameter, 2, apiName);
+            setId(insertParameter, 3, displayName);
+            setId(insertParameter, 4, relatedName);
+            setId(insertParameter, 5, description);
+            setId(insertParameter, 6, defaultValue);
+            setId(insertParameter, 7, units);
+            insertParameter.setInt(8, required);
+            insertParameter.setInt(9, sensitive);
+            insertParameter.addBatch();
+        }
+        setId(insertEntry, 1, stringId(row.getProduct()));
+        setId(insertEntry, 2, stringId(row.getVersion()));
+        setId(insertEntry, 3, stringId(row.getServiceType()));
+        setId(insertEntry, 4, stringId(row.getRoleGroupName()));
+        setId(insertEntry, 5, stringId(row.getCategoryName()));
+        insertEntry.setInt(6, parameter);
+        insertEntry.addBatch();
+    }
+
+    void flush() throws SQLException {
+        insertString.executeBatch();
+        insertDescription.executeBatch();
+        insertParameter.executeBatch();
+        insertEntry.executeBatch();
+    }
+
+    void delete(String product, String version) throws SQLException {
+        if (deleteEntries == null) {
+            deleteEntries = conn.prepareStatement("DELETE FROM configuration_entry " +
+                    "WHERE product_id IS (SELECT id FROM configuration_string WHERE value = ?) " +
+                    "AND version_id IS (SELECT id FROM configuration_string WHERE value = ?)");
+        }
+        deleteEntries.setString(1, product);
+        deleteEntries.setString(2, version);
+        deleteEntries.executeUpdate();
+    }
+
+    void close() throws SQLException {
+        DbUtils.close(insertString);
+        DbUtils.close(insertDescription);
+        DbUtils.close(insertParameter);
+        DbUtils.close(insertEntry);
+        DbUtils.close(deleteEntries);
+    }
+
+    private Integer stringId(String value) throws SQLException {
+        return id(value, stringIds, insertString);
+    }
+
+    private Integer id(String value, Map<String, Integer> ids, PreparedStatement insert) throws SQLException {
+        if (value == null) {
+            return null;
+        }
+        Integer id = ids.get(value);
+        if (id == null) {
+            id = ids.size() + 1;
+            ids.put(value, id);
+            insert.setInt(1, id);
+            insert.setString(2, value);
+            insert.addBatch();
+        }
+        return id;
+    }
+
+    private void setId(PreparedStatement stmt, int index, Integer id) throws SQLException {
+        if (id == null) {
+            stmt.setNull(index, Types.INTEGER);
+        } else {
+            stmt.setInt(index, id);
+        }
+    }
+
+    private void loadIds(String sql, Map<String, Integer> ids) throws SQLException {
+        Statement stmt = conn.createStatement();
+        ResultSet rs = stmt.executeQuery(sql);
+        while (rs.next()) {
+            ids.put(rs.getString(2), rs.getInt(1));
+        }
+        DbUtils.close(rs);
+        DbUtils.close(stmt);
+    }
+}
@@ -0,0 +1,153 @@
+package com.cloudera.ps.cm.api.client;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+// the stub serves the sections of the deployment fixture, put back together they have to give the fixture again
+public class SectionedDeploymentFetcherTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private ObjectNode deployment;
+    private StubCmServer server;
+    private SectionedDeploymentFetcher fetcher;
+
+    @Before
+    public void setUp() throws IOException {
+        deployment = (ObjectNode) mapper.readTree(getClass().getResourceAsStream("/deployment.json"));
+        server = new StubCmServer();
+        ObjectNode clusters = mapper.createObjectNode();
+        for (JsonNode cluster : deployment.path("clusters")) {
+            String clusterPath = "/clusters/" + cluster.path("name").asText();
+            ObjectNode services = mapper.createObjectNode();
+            for (JsonNode service : cluster.path("services")) {
+                String servicePath = clusterPath + "/services/" + service.path("name").asText();
+                server.respond(servicePath + "/roles?view=export", items(service.path("roles")));
+                server.respond(servicePath + "/roleConfigGroups?view=export", items(service.path("roleConfigGroups")));
+                services.withArray("items").add(without(service, "roles", "roleConfigGroups"));
+            }
+            server.respond(clusterPath + "/services?view=export", services);
+            server.respond(clusterPath + "/parcels", items(cluster.path("parcels")));
+            clusters.withArray("items").add(without(cluster, "services", "parcels"));
+        }
+        server.respond("/clusters?view=export", clusters);
+        server.respond("/hosts?view=export", items(deployment.path("hosts")));
+        server.respond("/users", items(deployment.path("users")));
+        server.respond("/cm/version", deployment.path("versionInfo"));
+        JsonNode managementService = deployment.path("managementService");
+        server.respond("/cm/service?view=export", without(managementService, "roles", "roleConfigGroups"));
+        server.respond("/cm/service/roles?view=export", items(managementService.path("roles")));
+        server.respond("/cm/service/roleConfigGroups?view=export", items(managementService.path("roleConfigGroups")));
+        server.respond("/cm/config?view=export", deployment.path("managerSettings"));
+        server.respond("/cm/allHosts/config?view=export", deployment.path("allHostsConfig"));
+        server.respond("/cm/peers", items(deployment.path("peers")));
+        fetcher = new SectionedDeploymentFetcher(new CmApiClient(server.getApiRoot(), "admin", "admin", 10000), 4);
+    }
+
+    @After
+    public void tearDown() {
+        fetcher.close();
+        server.stop();
+    }
+
+    @Test
+    public void assemblesDeployment() throws IOException {
+        JsonNode fetched = fetch();
+        assertTrue(fetched.hasNonNull("timestamp"));
+        deployment.remove("timestamp");
+        ((ObjectNode) fetched).remove("timestamp");
+        assertEquals(deployment, fetched);
+        assertTrue(server.getRequests().contains("/clusters/cluster1/services/hdfs/roles?view=export"));
+    }
+
+    @Test
+    public void skipsMissingOptionalSections() throws IOException {
+        server.remove("/cm/allHosts/config?view=export");
+        server.remove("/cm/peers");
+        JsonNode fetched = fetch();
+        assertFalse(fetched.has("allHostsConfig"));
+        assertFalse(fetched.has("peers"));
+        assertEquals(deployment.path("hosts"), fetched.path("hosts"));
+    }
+
+    @Test
+    public void failsOnFailedSection() throws IOException {
+        server.fail("/clusters/cluster1/services/hdfs/roles?view=export", 500);
+        try {
+            fetch();
+            fail("expected the failed section to fail the fetch");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("/clusters/cluster1/services/hdfs/roles?view=export returned 500"));
+        }
+    }
+
+    @Test
+    public void failsOnMissingRequiredSection() throws IOException {
+        server.remove("/hosts?view=export");
+        try {
+            fetch();
+            fail("expected the missing section to fail the fetch");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("/hosts?view=export returned 404"));
+        }
+    }
+
+    @Test
+    public void fetchesAgainAfterFailure() throws IOException {
+        server.fail("/hosts?view=export", 503);
+        try {
+            fetch();
+            fail("expected the failed section to fail the fetch");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("/hosts?view=export returned 503"));
+        }
+        server.respond("/hosts?view=export", items(deployment.path("hosts")));
+        assertEquals(deployment.path("hosts"), fetch().path("hosts"));
+        assertEquals(deployment.path("clusters"), fetch().path("clusters"));
+    }
+
+    @Test
+    public void keepsInterrupt() {
+        Thread.currentThread().interrupt();
+        try {
+            fetch();
+            fail("expected the interrupted fetch to fail");
+        } catch (IOException e) {
+            assertTrue(Thread.interrupted());
+        }
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void closed() throws IOException {
+        fetcher.close();
+        fetch();
+    }
+
+    private JsonNode fetch() throws IOException {
+        return fetcher.fetch();
+    }
+
+    private ObjectNode items(JsonNode items) {
+        ObjectNode list = mapper.createObjectNode();
+        list.set("items", items.deepCopy());
+        return list;
+    }
+
+    private static JsonNode without(JsonNode node, String... fieldNames) {
+        ObjectNode copy = ((ObjectNode) node).deepCopy();
+        copy.remove(Arrays.asList(fieldNames));
+        return copy;
+    }
+}
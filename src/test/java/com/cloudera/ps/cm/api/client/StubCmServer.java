@@ -0,0 +1,121 @@
+package com.cloudera.ps.cm.api.client;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPOutputStream;
+
+// serves canned CM API responses by path and query below /api/v10, gzipped when the client accepts it and
+// answering 304 when the client sends the etag of the response. Paths without a response get a 404
+public class StubCmServer {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final Map<String, Response> responses = new ConcurrentHashMap<String, Response>();
+    private final List<String> requests = Collections.synchronizedList(new ArrayList<String>());
+
+    private static class Response {
+
+        final int status;
+        final byte[] body;
+        final String etag;
+
+        Response(int status, byte[] body, String etag) {
+            this.status = status;
+            this.body = body;
+            this.etag = etag;
+        }
+    }
+
+    public StubCmServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(executor);
+        server.createContext("/api/v10", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    respond(exchange);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    public String getApiRoot() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/api/v10";
+    }
+
+    public void respond(String path, JsonNode body) throws IOException {
+        respond(path, body, null);
+    }
+
+    public void respond(String path, JsonNode body, String etag) throws IOException {
+        responses.put(path, new Response(200, mapper.writeValueAsBytes(body), etag));
+    }
+
+    public void fail(String path, int status) {
+        responses.put(path, new Response(status, ("stub failure of " + path).getBytes(), null));
+    }
+
+    public void remove(String path) {
+        responses.remove(path);
+    }
+
+    // the paths requested so far, with their query
+    public List<String> getRequests() {
+        synchronized (requests) {
+            return new ArrayList<String>(requests);
+        }
+    }
+
+    private void respond(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getRawPath().substring("/api/v10".length());
+        if (exchange.getRequestURI().getRawQuery() != null) {
+            path += "?" + exchange.getRequestURI().getRawQuery();
+        }
+        requests.add(path);
+        Response response = responses.get(path);
+        if (response == null) {
+            response = new Response(404, ("no stub response for " + path).getBytes(), null);
+        }
+        if (response.etag != null) {
+            if (response.etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+            exchange.getResponseHeaders().set("ETag", response.etag);
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (response.status == 200 && acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            exchange.sendResponseHeaders(response.status, 0);
+            OutputStream out = new GZIPOutputStream(exchange.getResponseBody());
+            out.write(response.body);
+            out.close();
+        } else {
+            exchange.sendResponseHeaders(response.status, response.body.length);
+            exchange.getResponseBody().write(response.body);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.cloudera.ps.cm.api.deployment.report;
+
+import com.cloudera.ps.cm.api.client.CmApiClient;
+import com.cloudera.ps.cm.api.client.StubCmServer;
+import com.cloudera.ps.cm.api.deployment.transform.DeploymentReformatter;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+// watch mode polls against a stub CM that answers with etags like cm/deployment
+public class DeploymentPollerTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private ObjectNode deployment;
+    private StubCmServer server;
+    private DeploymentPoller poller;
+
+    @Before
+    public void setUp() throws IOException {
+        deployment = (ObjectNode) mapper.readTree(getClass().getResourceAsStream("/deployment.json"));
+        server = new StubCmServer();
+        server.respond("/cm/deployment", deployment, "\"1\"");
+        final CmApiClient client = new CmApiClient(server.getApiRoot(), "admin", "admin", 10000);
+        final URL url = new URL(server.getApiRoot() + "/cm/deployment");
+        poller = new DeploymentPoller(new DeploymentPoller.Fetch() {
+            public JsonNode fetch(Properties validators) throws IOException {
+                return client.readIfModified(url, validators);
+            }
+        }, new DeploymentChangeTracker(new DeploymentReformatter(), "v10"));
+        assertEquals(0, poller.poll().size());
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    public void notModified() throws IOException {
+        // a 304 is not read, so a changed deployment behind the same etag goes unnoticed
+        server.respond("/cm/deployment", changedDeployment(), "\"1\"");
+        assertEquals(0, poller.poll().size());
+        assertEquals(2, server.getRequests().size());
+    }
+
+    @Test
+    public void unchanged() throws IOException {
+        ObjectNode reread = deployment.deepCopy();
+        reread.put("timestamp", "2019-06-02T00:00:00.000Z");
+        server.respond("/cm/deployment", reread, "\"2\"");
+        assertEquals(0, poller.poll().size());
+    }
+
+    @Test
+    public void changed() throws IOException {
+        server.respond("/cm/deployment", changedDeployment(), "\"2\"");
+        assertChanged(poller.poll());
+        server.respond("/cm/deployment", changedDeployment(), "\"3\"");
+        assertEquals(0, poller.poll().size());
+    }
+
+    @Test
+    public void failed() throws IOException {
+        server.fail("/cm/deployment", 503);
+        try {
+            poller.poll();
+            fail("expected the failed poll to throw");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("returned 503"));
+        }
+        // the next poll diffs against the deployment read before the failure
+        server.respond("/cm/deployment", changedDeployment(), "\"2\"");
+        assertChanged(poller.poll());
+    }
+
+    private ObjectNode changedDeployment() {
+        ObjectNode changed = deployment.deepCopy();
+        ((ObjectNode) changed.path("managerSettings").path("items").get(0)).put("value", "changed");
+        return changed;
+    }
+
+    private void assertChanged(JsonNode changes) {
+        assertEquals(changes.toString(), 1, changes.size());
+        String name = deployment.path("managerSettings").path("items").get(0).path("name").asText();
+        assertEquals("change", changes.get(0).path("op").asText());
+        assertEquals("/managerSettings/" + name, changes.get(0).path("path").asText());
+    }
+}
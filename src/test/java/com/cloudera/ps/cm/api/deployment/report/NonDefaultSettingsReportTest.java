@@ -0,0 +1,139 @@
+package com.cloudera.ps.cm.api.deployment.report;
+
+import com.cloudera.ps.cm.configuration.ConfigurationReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.commons.dbutils.DbUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.Assert.assertEquals;
+
+// the same api name can have different defaults in the service-wide and the role groups of a service
+public class NonDefaultSettingsReportTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private ConfigurationReference reference;
+
+    @Before
+    public void setUp() throws IOException, SQLException {
+        String database = folder.newFile("configuration.db").getPath();
+        Connection conn = DriverManager.getConnection("jdbc:sqlite:" + database);
+        try {
+            Statement stmt = conn.createStatement();
+            stmt.execute("CREATE TABLE configuration (product TEXT, version TEXT, service TEXT, role_group TEXT, " +
+                    "category TEXT, api_name TEXT, display_name TEXT, related_name TEXT, description TEXT, " +
+                    "default_value TEXT, units TEXT, required INTEGER, sensitive INTEGER)");
+            stmt.execute("CREATE VIRTUAL TABLE configuration_search USING fts4(description)");
+            DbUtils.close(stmt);
+            PreparedStatement insert = conn.prepareStatement("INSERT INTO configuration VALUES " +
+                    "('CDH', '5.16.1', ?, ?, 'Main', ?, ?, 'null', 'null', ?, 'null', 0, 0)");
+            // service-wide and role group parameters of both services share their api names
+            for (String[] parameter : new String[][]{
+                    {"HDFS", "HDFS", "log_dir", "/var/log/hadoop-hdfs"},
+                    {"HDFS", "DATANODE", "log_dir", "/var/log/hadoop-hdfs/datanode"},
+                    {"HDFS", "NAMENODE", "log_dir", "/var/log/hadoop-hdfs/namenode"},
+                    {"ZOOKEEPER", "ZOOKEEPER", "log_dir", "/var/log/zookeeper"},
+                    {"ZOOKEEPER", "SERVER", "log_dir", "/var/log/zookeeper/server"},
+                    {"ZOOKEEPER", "ZOOKEEPER", "zookeeper_datadir_autocreate", "false"}}) {
+                insert.setString(1, parameter[0]);
+                insert.setString(2, parameter[1]);
+                insert.setString(3, parameter[2]);
+                insert.setString(4, "Display name of " + parameter[2]);
+                insert.setString(5, parameter[3]);
+                insert.executeUpdate();
+            }
+            DbUtils.close(insert);
+        } finally {
+            DbUtils.close(conn);
+        }
+        reference = new ConfigurationReference(database);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        reference.close();
+    }
+
+    @Test
+    public void serviceWideDefaults() {
+        JsonNode report = report(
+                service("hdfs", "HDFS", "log_dir", "/var/log/hadoop-hdfs"),
+                service("zookeeper", "ZOOKEEPER", "log_dir", "/var/log/zookeeper"));
+        assertEquals(report.toString(), 0, report.size());
+    }
+
+    @Test
+    public void serviceWideOverrides() {
+        JsonNode report = report(
+                service("hdfs", "HDFS", "log_dir", "/var/log/hadoop-hdfs/datanode"),
+                service("zookeeper", "ZOOKEEPER", "log_dir", "/var/log/zookeeper/server"));
+        assertEquals(report.toString(), 2, report.size());
+        assertEquals("/var/log/hadoop-hdfs", report.get(0).path("default").asText());
+        assertEquals("/var/log/zookeeper", report.get(1).path("default").asText());
+    }
+
+    @Test
+    public void roleGroupDefaults() {
+        ObjectNode hdfs = service("hdfs", "HDFS", "log_dir", "/var/log/hadoop-hdfs");
+        ObjectNode group = hdfs.withArray("roleConfigGroups").addObject();
+        group.put("name", "hdfs-DATANODE-BASE");
+        group.put("roleType", "DATANODE");
+        addItem(group, "log_dir", "/var/log/hadoop-hdfs");
+        JsonNode report = report(hdfs);
+        assertEquals(report.toString(), 1, report.size());
+        assertEquals("roleConfigGroup", report.get(0).path("scope").asText());
+        assertEquals("/var/log/hadoop-hdfs/datanode", report.get(0).path("default").asText());
+    }
+
+    @Test
+    public void roleFallsBackToServiceWide() {
+        ObjectNode zookeeper = service("zookeeper", "ZOOKEEPER", "log_dir", "/var/log/zookeeper");
+        ObjectNode role = zookeeper.withArray("roles").addObject();
+        role.put("name", "zookeeper-SERVER-1");
+        role.put("type", "SERVER");
+        addItem(role, "zookeeper_datadir_autocreate", "true");
+        JsonNode report = report(zookeeper);
+        assertEquals(report.toString(), 1, report.size());
+        assertEquals("false", report.get(0).path("default").asText());
+    }
+
+    private JsonNode report(ObjectNode... services) {
+        ObjectNode deployment = mapper.createObjectNode();
+        ObjectNode cluster = deployment.withArray("clusters").addObject();
+        cluster.put("name", "cluster1");
+        cluster.put("fullVersion", "5.16.1");
+        for (ObjectNode service : services) {
+            cluster.withArray("services").add(service);
+        }
+        return new NonDefaultSettingsReport(reference).transform(deployment);
+    }
+
+    private ObjectNode service(String name, String type, String property, String value) {
+        ObjectNode service = mapper.createObjectNode();
+        service.put("name", name);
+        service.put("type", type);
+        addItem(service, property, value);
+        return service;
+    }
+
+    private static void addItem(ObjectNode node, String name, String value) {
+        ObjectNode item = ((ObjectNode) node.with("config")).withArray("items").addObject();
+        item.put("name", name);
+        item.put("value", value);
+    }
+}
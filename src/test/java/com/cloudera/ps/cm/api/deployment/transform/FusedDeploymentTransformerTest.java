@@ -0,0 +1,107 @@
+package com.cloudera.ps.cm.api.deployment.transform;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertArrayEquals;
+
+// the fused traversal and the chain run one transformer at a time both have to write the bytes the chain wrote
+// before either was changed, kept in src/test/resources/chain. Outputs with --select or globs in --redact come
+// from the original reformatter, sorter and api path includer, with the original filter matching the globs and
+// DeploymentPathSelector.transform run on the original reformatted deployment
+public class FusedDeploymentTransformerTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private JsonNode deployment;
+    private ForkJoinPool pool;
+
+    @Before
+    public void setUp() throws IOException {
+        deployment = mapper.readTree(getClass().getResourceAsStream("/deployment.json"));
+        pool = new ForkJoinPool(4);
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Test
+    public void reformat() throws IOException {
+        assertOutput("reformat.json", new DeploymentReformatter(), new ObjectNodeFieldFilter());
+    }
+
+    @Test
+    public void reformatSortAdd() throws IOException {
+        assertOutput("reformat-sort-add.json", new DeploymentReformatter(), new ObjectNodeFieldSorter(),
+                new DeploymentApiPathIncluder("v10"), new ObjectNodeFieldFilter());
+    }
+
+    @Test
+    public void redact() throws IOException {
+        assertOutput("redact.json", redacted("dn_prop_*", "*Ref", "host?d"));
+    }
+
+    @Test
+    public void reformatRedact() throws IOException {
+        assertOutput("reformat-redact.json", new DeploymentReformatter(),
+                redacted("host", "cluster", "*_prop_1", "host?d"));
+    }
+
+    @Test
+    public void reformatSelect() throws IOException {
+        assertOutput("reformat-select.json", new DeploymentReformatter(),
+                new DeploymentPathSelector(Arrays.asList("/api/v10/clusters/*/services/hdfs/roles", "/api/v10/cm/config")),
+                new ObjectNodeFieldFilter());
+    }
+
+    @Test
+    public void reformatSelectSortAddRedact() throws IOException {
+        assertOutput("reformat-select-sort-add-redact.json", new DeploymentReformatter(),
+                new DeploymentPathSelector(Arrays.asList("/api/v10/hosts", "/api/v10/clusters/*/services/*/roles")),
+                new ObjectNodeFieldSorter(), new DeploymentApiPathIncluder("v10"), redacted("dn_prop_*", "host"));
+    }
+
+    @Test
+    public void parallelReformatSortAdd() throws IOException {
+        assertOutput("reformat-sort-add.json", new DeploymentReformatter(pool), new ObjectNodeFieldSorter(),
+                new DeploymentApiPathIncluder("v10"), new ObjectNodeFieldFilter());
+    }
+
+    @Test
+    public void parallelReformatSelectSortAddRedact() throws IOException {
+        assertOutput("reformat-select-sort-add-redact.json", new DeploymentReformatter(pool),
+                new DeploymentPathSelector(Arrays.asList("/api/v10/hosts", "/api/v10/clusters/*/services/*/roles")),
+                new ObjectNodeFieldSorter(), new DeploymentApiPathIncluder("v10"), redacted("dn_prop_*", "host"));
+    }
+
+    // the default filter, as the command line builds it with --redact
+    private static ObjectNodeFieldFilter redacted(String... fieldNames) {
+        List<String> filteredFields = new ArrayList<String>(ObjectNodeFieldFilter.FILTERED_FIELDS);
+        filteredFields.addAll(Arrays.asList(fieldNames));
+        return new ObjectNodeFieldFilter(filteredFields);
+    }
+
+    private void assertOutput(String expectedOutput, DeploymentTransformer... chain) throws IOException {
+        byte[] expected = IOUtils.toByteArray(getClass().getResourceAsStream("/chain/" + expectedOutput));
+        List<DeploymentTransformer> transformers = Arrays.asList(chain);
+        // the reformatter modifies its input, each path gets its own copy
+        JsonNode sequential = deployment.deepCopy();
+        for (DeploymentTransformer transformer: transformers) {
+            sequential = transformer.transform(sequential);
+        }
+        assertArrayEquals(expected, mapper.writeValueAsBytes(sequential));
+        JsonNode fused = new FusedDeploymentTransformer(transformers).transform(deployment.deepCopy());
+        assertArrayEquals(expected, mapper.writeValueAsBytes(fused));
+    }
+}
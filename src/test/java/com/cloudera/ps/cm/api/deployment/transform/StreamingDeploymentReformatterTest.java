@@ -0,0 +1,67 @@
+package com.cloudera.ps.cm.api.deployment.transform;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+
+// streaming has to write the same bytes as reformatting the tree, then selecting and filtering it
+public class StreamingDeploymentReformatterTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    public void reformat() throws Exception {
+        assertSameOutput(null);
+    }
+
+    @Test
+    public void select() throws Exception {
+        assertSameOutput(Arrays.asList("/api/v10/clusters/*/services/hdfs/roles", "/api/v10/hosts", "/api/v10/cm/config"));
+    }
+
+    @Test
+    public void redactReferences() throws Exception {
+        assertSameOutput(null, "host", "cluster");
+    }
+
+    @Test
+    public void redactGlobs() throws Exception {
+        assertSameOutput(null, "*Ref", "it*", "dn_prop_*", "host?d", "CDH-*");
+    }
+
+    @Test
+    public void selectAndRedact() throws Exception {
+        assertSameOutput(Arrays.asList("/api/v10/clusters/*/services/*/roles"), "host", "roleConfigGroup", "*_prop_1");
+    }
+
+    private void assertSameOutput(List<String> selectedPaths, String... redacted) throws IOException, URISyntaxException {
+        List<String> filteredFields = new ArrayList<String>(ObjectNodeFieldFilter.FILTERED_FIELDS);
+        filteredFields.addAll(Arrays.asList(redacted));
+        ObjectNodeFieldFilter filter = new ObjectNodeFieldFilter(filteredFields);
+        DeploymentPathSelector selector = selectedPaths == null ? null : new DeploymentPathSelector(selectedPaths);
+        File input = new File(getClass().getResource("/deployment.json").toURI());
+
+        JsonNode tree = new DeploymentReformatter().transform(mapper.readTree(input));
+        if (selector != null) {
+            tree = selector.transform(tree);
+        }
+        tree = filter.transform(tree);
+
+        ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+        JsonGenerator generator = mapper.getFactory().createGenerator(streamed);
+        new StreamingDeploymentReformatter(null, selector, filter).reformat(input, generator);
+        generator.close();
+        assertArrayEquals(mapper.writeValueAsBytes(tree), streamed.toByteArray());
+    }
+}
@@ -0,0 +1,134 @@
+package com.cloudera.ps.cm.configuration;
+
+import org.apache.commons.dbutils.DbUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+// the snapshot compares keys on their UTF-8 bytes without decoding them, so keys sharing prefixes and
+// keys with two, three and four byte characters have to be found exactly where the writer sorted them
+public class ConfigurationSnapshotTest {
+
+    // version, service, role group, api name
+    private static final String[][] KEYS = {
+            {null, null, null, "cm_prop"},
+            {"5.1.0", "HDFS", "DATANODE", "a"},
+            {"5.1.0", "HDFS", "DATANODE", "ab"},
+            {"5.1.0", "HDFS", "DATANODE", "abc"},
+            {"5.1.0", "HDFS", "DATANODE", "b"},
+            {"5.1.0", "HDFS", "DATANODE", "z"},
+            {"5.1.0", "HDFS", "DATANODE", "\u00e9"},
+            {"5.1.0", "HDFS", "DATANODE", "a\u00e9"},
+            {"5.1.0", "HDFS", "DATANODE", "\u65e5\u672c"},
+            {"5.1.0", "HDFS", "DATANODE", "\u65e5\u672c\u8a9e"},
+            {"5.1.0", "HDFS", "HDFS", "a"},
+            {"5.1.0", "HDFS", null, "a"},
+            {"5.10.0", "HDFS", "DATANODE", "a"},
+            {"5.10.0", "HDFS", "DATANODE", "\ud83d\ude00"}};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ConfigurationSnapshot snapshot;
+
+    @Before
+    public void setUp() throws IOException, SQLException {
+        File database = folder.newFile("configuration.db");
+        Connection conn = DriverManager.getConnection("jdbc:sqlite:" + database.getPath());
+        try {
+            Statement stmt = conn.createStatement();
+            stmt.execute("CREATE TABLE configuration (product TEXT, version TEXT, service TEXT, role_group TEXT, " +
+                    "category TEXT, api_name TEXT, display_name TEXT, related_name TEXT, description TEXT, " +
+                    "default_value TEXT, units TEXT, required INTEGER, sensitive INTEGER)");
+            DbUtils.close(stmt);
+            PreparedStatement insert = conn.prepareStatement("INSERT INTO configuration VALUES " +
+                    "('CDH', ?, ?, ?, 'Main', ?, 'null', 'null', 'null', ?, 'null', 0, ?)");
+            // inserted in reverse, so the writer has to sort them
+            for (int i = KEYS.length - 1; i >= 0; i--) {
+                for (int k = 0; k < 4; k++) {
+                    insert.setString(k + 1, KEYS[i][k]);
+                }
+                insert.setString(5, defaultValue(KEYS[i]));
+                insert.setInt(6, i % 2);
+                insert.executeUpdate();
+            }
+            DbUtils.close(insert);
+            File output = new File(folder.getRoot(), "configuration.snapshot");
+            new ConfigurationSnapshotWriter().write(conn, output);
+            snapshot = new ConfigurationSnapshot(output);
+        } finally {
+            DbUtils.close(conn);
+        }
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        snapshot.close();
+    }
+
+    @Test
+    public void findsEveryKey() {
+        assertEquals(KEYS.length, snapshot.size());
+        for (int i = 0; i < KEYS.length; i++) {
+            int entry = find(KEYS[i]);
+            assertEquals(defaultValue(KEYS[i]), snapshot.getDefaultValue(entry));
+            assertEquals(i % 2 == 1, snapshot.isSensitive(entry));
+        }
+    }
+
+    @Test
+    public void firstAndLastKeys() {
+        // null keys sort first, four byte characters last
+        assertEquals(0, find(KEYS[0]));
+        assertEquals(snapshot.size() - 1, find(KEYS[KEYS.length - 1]));
+        assertEquals("\ud83d\ude00", snapshot.getRow(snapshot.size() - 1).getApiName());
+        assertNull(snapshot.getRow(0).getVersion());
+    }
+
+    @Test
+    public void missesKeys() {
+        String[][] misses = {
+                {null, null, null, "cm_pro"},
+                {null, null, null, "cm_prop_"},
+                {"5.1", "HDFS", "DATANODE", "a"},
+                {"5.1.0", "HDFS", "DATANODE", ""},
+                {"5.1.0", "HDFS", "DATANODE", "ac"},
+                {"5.1.0", "HDFS", "DATANODE", "abcd"},
+                {"5.1.0", "HDFS", "DATANODE", "e"},
+                {"5.1.0", "HDFS", "DATANODE", "\u00e8"},
+                {"5.1.0", "HDFS", "DATANODE", "\u00e9\u00e9"},
+                {"5.1.0", "HDFS", "DATANODE", "\u65e5"},
+                {"5.1.0", "HDFS", "DATANODE", "\u65e5\u672c\u8a9e\u8a9e"},
+                {"5.1.0", "HDFS", "DATANODE", "\ud83d\ude00"},
+                {"5.1.0", "HDFS", "DATANODE", "\uffff"},
+                {"5.1.0", "HDFS", "HDFS", "b"},
+                {"5.10.0", "HDFS", "DATANODE", "\ud83d\ude01"},
+                {"5.10.0", "HDFS", "DATANODE", "\ud83d\ude00a"},
+                {"5.2.0", "HDFS", "DATANODE", "a"},
+                {"6.0.0", "HDFS", "DATANODE", "a"}};
+        for (String[] key : misses) {
+            assertEquals(key[0] + " " + key[1] + " " + key[2] + " " + key[3], -1, find(key));
+        }
+    }
+
+    private int find(String[] key) {
+        return snapshot.find(key[0], key[1], key[2], key[3]);
+    }
+
+    private static String defaultValue(String[] key) {
+        return key[0] + "/" + key[2] + "/" + key[3];
+    }
+}